@@ -177,6 +177,29 @@ dependencies {
 
     // JEI 15.20.0.129 for Forge 1.20.1 (project 238222, file 7391695)
     runtimeOnly(fg.deobf("curse.maven:jei-238222:7391695"))
+
+    // JUnit 5 for unit tests and the lookup benchmarks
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.2")
+}
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
+}
+
+tasks.register<Test>("benchmark") {
+    group = "verification"
+    description = "Runs the lookup benchmarks and prints their timings"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    testLogging {
+        showStandardStreams = true
+    }
 }
 
 // Merge resources into classes directory for ForgeGradle
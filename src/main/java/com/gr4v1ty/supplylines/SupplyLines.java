@@ -1,5 +1,8 @@
 package com.gr4v1ty.supplylines;
 
+import com.gr4v1ty.supplylines.compat.create.BroadcastCircuitBreaker;
+import com.gr4v1ty.supplylines.compat.create.LogisticsChangeTracker;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
 import com.gr4v1ty.supplylines.compat.structurize.ModPlacementHandlers;
 import com.gr4v1ty.supplylines.config.ModConfig;
 import com.gr4v1ty.supplylines.network.ModNetwork;
@@ -8,17 +11,26 @@ import com.gr4v1ty.supplylines.registry.ModBuildings;
 import com.gr4v1ty.supplylines.registry.ModItems;
 import com.gr4v1ty.supplylines.registry.ModJobs;
 import com.gr4v1ty.supplylines.rs.SupplyLinesRequestSystem;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.gr4v1ty.supplylines.util.inventory.RackChangeTracker;
 import com.gr4v1ty.supplylines.util.ModVersion;
 import com.gr4v1ty.supplylines.util.SoundFallbacks;
 import org.slf4j.LoggerFactory;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.eventbus.api.IEventBus;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.ChunkEvent;
 import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import com.gr4v1ty.supplylines.colony.manager.ColonyUpdateDispatcher;
 import com.gr4v1ty.supplylines.colony.manager.RequestHandler;
+import com.gr4v1ty.supplylines.colony.manager.StockIndex;
+import com.gr4v1ty.supplylines.colony.manager.StockKeeperCoordinator;
 import org.slf4j.Logger;
 
 @Mod(value = "supplylines")
@@ -41,6 +53,9 @@ public final class SupplyLines {
         ModJobs.JOBS.register(modBus);
         ModBuildings.BUILDINGS.register(modBus);
         MinecraftForge.EVENT_BUS.addListener(this::onServerStopping);
+        MinecraftForge.EVENT_BUS.addListener(this::onTagsUpdated);
+        MinecraftForge.EVENT_BUS.addListener(this::onServerTick);
+        MinecraftForge.EVENT_BUS.addListener(this::onChunkUnload);
         modBus.addListener((FMLCommonSetupEvent e) -> {
             LOGGER.info("[{}] Version {} loaded", MOD_ID, ModVersion.get().getDisplayVersion());
             if (ModVersion.get().isDevBuild()) {
@@ -62,5 +77,33 @@ public final class SupplyLines {
     private void onServerStopping(ServerStoppingEvent event) {
         LOGGER.debug("[{}] Server stopping - clearing registration tracking", MOD_ID);
         RequestHandler.clearRegistrationTracking();
+        NetworkSummaryCache.clear();
+        LogisticsChangeTracker.clear();
+        BroadcastCircuitBreaker.clear();
+        RackChangeTracker.clear();
+        ColonyUpdateDispatcher.clear();
+        StockKeeperCoordinator.clear();
+        ItemMatch.ItemStackKey.clearPool();
+    }
+
+    private void onChunkUnload(ChunkEvent.Unload event) {
+        if (event.getLevel() instanceof Level level && !level.isClientSide()) {
+            StockKeeperCoordinator.onChunkUnloaded(level, event.getChunk().getPos());
+        }
+    }
+
+    private void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            ColonyUpdateDispatcher.flush();
+            ItemMatch.ItemStackKey.sweepIfDue(event.getServer().getTickCount());
+            int statsInterval = ModConfig.SERVER.cacheStatsLogIntervalTicks.get();
+            if (statsInterval > 0 && event.getServer().getTickCount() % statsInterval == 0) {
+                NetworkSummaryCache.logStats();
+            }
+        }
+    }
+
+    private void onTagsUpdated(TagsUpdatedEvent event) {
+        StockIndex.onTagsReloaded();
     }
 }
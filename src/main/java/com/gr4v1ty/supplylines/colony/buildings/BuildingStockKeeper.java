@@ -1,12 +1,18 @@
 package com.gr4v1ty.supplylines.colony.buildings;
 
 import com.gr4v1ty.supplylines.colony.manager.NetworkIntegration;
+import com.gr4v1ty.supplylines.colony.manager.AdaptiveScheduler;
 import com.gr4v1ty.supplylines.colony.manager.BuildingBlockScanner;
+import com.gr4v1ty.supplylines.colony.manager.ColonyUpdateDispatcher;
 import com.gr4v1ty.supplylines.colony.manager.DisplayBoardManager;
+import com.gr4v1ty.supplylines.colony.manager.NegativeResolveCache;
+import com.gr4v1ty.supplylines.colony.manager.OpenRequestIndex;
+import com.gr4v1ty.supplylines.colony.manager.RequestBatchPlanner;
 import com.gr4v1ty.supplylines.colony.manager.RequestHandler;
 import com.gr4v1ty.supplylines.colony.manager.RestockManager;
 import com.gr4v1ty.supplylines.colony.manager.SkillManager;
 import com.gr4v1ty.supplylines.colony.manager.SpeculativeOrderManager;
+import com.gr4v1ty.supplylines.colony.manager.StockKeeperCoordinator;
 import com.gr4v1ty.supplylines.config.ModConfig;
 import com.gr4v1ty.supplylines.colony.manager.migration.PanelMigrationManager;
 import com.gr4v1ty.supplylines.colony.manager.migration.TrainStationMigrationManager;
@@ -19,7 +25,12 @@ import com.gr4v1ty.supplylines.colony.buildings.modules.SuppliersModule;
 import com.gr4v1ty.supplylines.util.ItemMatch;
 import com.gr4v1ty.supplylines.util.RequestTypes;
 import com.gr4v1ty.supplylines.util.inventory.InventoryOperations;
+import com.gr4v1ty.supplylines.util.inventory.HandlerCache;
 import com.gr4v1ty.supplylines.util.inventory.InventorySignature;
+import com.gr4v1ty.supplylines.util.inventory.RackChangeTracker;
+import com.gr4v1ty.supplylines.util.inventory.RackIndex;
+import com.gr4v1ty.supplylines.util.inventory.RackSignatures;
+import com.gr4v1ty.supplylines.util.inventory.SlotClaims;
 import com.minecolonies.api.colony.IColony;
 import com.minecolonies.api.colony.requestsystem.request.RequestState;
 import com.minecolonies.api.colony.requestsystem.requestable.Burnable;
@@ -31,19 +42,20 @@ import com.minecolonies.core.colony.buildings.AbstractBuilding;
 import com.minecolonies.core.colony.buildings.modules.WorkerBuildingModule;
 import com.minecolonies.api.colony.requestsystem.request.IRequest;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import net.minecraft.core.BlockPos;
-import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.tags.TagKey;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.entity.BlockEntity;
-import net.minecraftforge.common.capabilities.ForgeCapabilities;
 import net.minecraftforge.items.IItemHandler;
 import org.jetbrains.annotations.Nullable;
 import com.gr4v1ty.supplylines.util.LogTags;
@@ -99,6 +111,9 @@ public class BuildingStockKeeper extends AbstractBuilding {
     /** NBT tag for storing pending station migration data. */
     private static final String TAG_PENDING_STATION_MIGRATION = "pendingStationMigration";
 
+    /** NBT tag for storing in-flight staging requests. */
+    private static final String TAG_STAGING = "staging";
+
     private final BuildingBlockScanner blockScanner;
     private final NetworkIntegration networkIntegration;
     private SkillManager skillManager;
@@ -106,8 +121,24 @@ public class BuildingStockKeeper extends AbstractBuilding {
     private final RestockManager restockManager;
     private final SpeculativeOrderManager speculativeOrderManager;
     private final DisplayBoardManager displayBoardManager;
+    private final AdaptiveScheduler scheduler = new AdaptiveScheduler();
+    private final HandlerCache handlerCache = new HandlerCache();
+    private final RackIndex rackIndex;
+    private final RackSignatures rackSignatures = new RackSignatures();
+    private final RequestBatchPlanner batchPlanner;
+    private final OpenRequestIndex openRequests = new OpenRequestIndex();
+    private final NegativeResolveCache negativeResolves = new NegativeResolveCache();
+    private long lastResolveStatsTick = Long.MIN_VALUE;
     private long lastInvSigTick = Long.MIN_VALUE;
     private long lastInvSig = Long.MIN_VALUE;
+    private long lastFullInvSigTick = Long.MIN_VALUE;
+    private boolean workerActive;
+    /** Whether the hut is registered with its colony's coordinator. */
+    private boolean coordinated;
+    /** Set when a watched rack or the hut inventory reports a change. */
+    private boolean inventoryDirty = true;
+    private long rackChangeCount;
+    private final Consumer<BlockPos> rackChangeListener = this::onRackContentsChanged;
 
     /** Cached panel migration data during upgrade. Persisted to NBT. */
     @Nullable
@@ -135,6 +166,8 @@ public class BuildingStockKeeper extends AbstractBuilding {
     public BuildingStockKeeper(IColony colony, BlockPos pos) {
         super(colony, pos);
         this.blockScanner = new BuildingBlockScanner(this);
+        this.rackIndex = new RackIndex(this.blockScanner.getRackPositions(), this.handlerCache);
+        this.batchPlanner = new RequestBatchPlanner(this.rackIndex);
         this.networkIntegration = new NetworkIntegration(colony);
         this.requestHandler = new RequestHandler(colony, pos);
         this.restockManager = new RestockManager(colony);
@@ -165,8 +198,7 @@ public class BuildingStockKeeper extends AbstractBuilding {
     }
 
     private void ensureRSRegistered(Level level) {
-        List<BlockPos> racks = this.blockScanner.getRackPositions();
-        this.requestHandler.ensureRSRegistered(level, racks, this);
+        this.requestHandler.ensureRSRegistered(level, this.rackIndex, this);
     }
 
     @SuppressWarnings("deprecation")
@@ -232,35 +264,18 @@ public class BuildingStockKeeper extends AbstractBuilding {
 
     @Nullable
     public IItemHandler getStagingHandler(Level level, @Nullable ItemStack exemplar) {
-        IItemHandler face;
         if (level == null) {
             return null;
         }
-        BlockPos pos = this.getPosition();
-        BlockEntity be = level.getBlockEntity(pos);
-        if (be == null) {
-            return null;
-        }
-        IItemHandler h = be.getCapability(ForgeCapabilities.ITEM_HANDLER, null).orElse(null);
-        if (InventoryOperations.canAccept(h, exemplar)) {
-            return h;
-        }
-        for (Direction side : Direction.values()) {
-            face = be.getCapability(ForgeCapabilities.ITEM_HANDLER, side).orElse(null);
-            if (!InventoryOperations.canAccept(face, exemplar))
-                continue;
-            return face;
-        }
-        if (h != null) {
-            return h;
-        }
-        for (Direction side : Direction.values()) {
-            face = be.getCapability(ForgeCapabilities.ITEM_HANDLER, side).orElse(null);
-            if (face == null)
-                continue;
-            return face;
+        // Prefer a side that accepts the exemplar, otherwise fall back to the
+        // unsided handler (or the first side that has one)
+        List<HandlerCache.Side> sides = this.handlerCache.sidesAt(level, this.getPosition());
+        for (HandlerCache.Side side : sides) {
+            if (InventoryOperations.canAccept(side.handler(), exemplar)) {
+                return side.handler();
+            }
         }
-        return null;
+        return sides.isEmpty() ? null : sides.get(0).handler();
     }
 
     public void serverTick(Level level) {
@@ -271,9 +286,15 @@ public class BuildingStockKeeper extends AbstractBuilding {
         if (level == null || level.isClientSide()) {
             return;
         }
+        this.workerActive = workerActive;
+        if (!this.coordinated && this.getColony() != null) {
+            StockKeeperCoordinator.forColony(this.getColony()).register(this);
+            this.coordinated = true;
+        }
         this.scanIfDue(level);
         this.refreshInventorySignatureIfDue(level);
         this.ensureRSRegistered(level);
+        this.planRequestBatch(level);
         if (this.getBuildingLevel() >= getStockTickerRequiredLevel() && workerActive) {
             this.updateStockSnapshotIfDue(level);
             this.processStagingRequestsIfDue(level);
@@ -283,6 +304,25 @@ public class BuildingStockKeeper extends AbstractBuilding {
             this.processSpeculativeOrdersIfDue(level);
             this.updateDisplayBoardIfDue(level);
         }
+        this.logResolveStatsIfDue(level);
+    }
+
+    private void logResolveStatsIfDue(Level level) {
+        int interval = ModConfig.SERVER.cacheStatsLogIntervalTicks.get();
+        if (interval <= 0 || !ModConfig.SERVER.negativeResolveCache.get()) {
+            return;
+        }
+        long now = level.getGameTime();
+        if (this.lastResolveStatsTick == Long.MIN_VALUE) {
+            // First report covers a full interval
+            this.lastResolveStatsTick = now;
+            return;
+        }
+        if (now - this.lastResolveStatsTick < interval) {
+            return;
+        }
+        this.lastResolveStatsTick = now;
+        this.negativeResolves.logStats(this.getPosition());
     }
 
     @SuppressWarnings("deprecation")
@@ -328,11 +368,40 @@ public class BuildingStockKeeper extends AbstractBuilding {
 
     private void processStagingRequestsIfDue(Level level) {
         this.ensureSkillManagerInitialized();
-        int interval = this.skillManager != null
+        int skillInterval = this.skillManager != null
                 ? this.skillManager.getStagingProcessIntervalTicks()
                 : getDefaultStagingProcessIntervalTicks();
-        this.networkIntegration.processStagingRequestsIfDue(level, this.blockScanner.getStockTickerPos(),
-                this.blockScanner.getRackPositions(), interval, () -> this.refreshInventorySignatureIfDue(level));
+        boolean busy = this.networkIntegration.hasStagingWork();
+        int interval = this.scheduler.getInterval(AdaptiveScheduler.Task.STAGING, skillInterval,
+                ModConfig.SERVER.stagingMin.get(), ModConfig.SERVER.stagingBase.get(), busy);
+        if (this.networkIntegration.processStagingRequestsIfDue(level, this.blockScanner.getStockTickerPos(),
+                this.blockScanner.getRackPositions(), this.handlerCache, interval,
+                () -> this.onStagedItemsArrived(level))) {
+            this.scheduler.onRan(AdaptiveScheduler.Task.STAGING, busy);
+        }
+    }
+
+    private void planRequestBatch(Level level) {
+        int expired = this.rackIndex.getClaims().expire(level.getGameTime());
+        if (expired > 0) {
+            LOGGER.debug("{} Released {} expired slot reservations", LogTags.ORDERING, expired);
+            this.batchPlanner.invalidate();
+        }
+        IColony mcolony = this.getColony();
+        if (mcolony == null) {
+            return;
+        }
+        try {
+            this.batchPlanner.planIfDue(mcolony.getRequestManager());
+        } catch (RuntimeException e) {
+            LOGGER.error("{} planRequestBatch threw", LogTags.ORDERING, e);
+        }
+    }
+
+    private void onStagedItemsArrived(Level level) {
+        // Let the next batch plan see the arrivals right away
+        this.rackIndex.invalidate();
+        this.refreshInventorySignatureIfDue(level);
     }
 
     public void scanIfDue(Level level) {
@@ -346,38 +415,100 @@ public class BuildingStockKeeper extends AbstractBuilding {
             return;
         }
         boolean racksChanged = this.blockScanner.rescan(level, this.getBuildingLevel());
+        this.watchRacks(level);
         if (racksChanged && (mcolony = this.getColony()) != null) {
-            try {
-                LOGGER.debug("{} scanIfDue: onColonyUpdate triggered (racksChanged=true)", LogTags.ORDERING);
-                mcolony.getRequestManager().onColonyUpdate(req -> this.shouldReEvaluateRequest(req, null, "scanIfDue"));
-            } catch (Exception e) {
-                LOGGER.error("{} scanIfDue: onColonyUpdate threw", LogTags.ORDERING, e);
-            }
+            LOGGER.debug("{} scanIfDue: colony update queued (racksChanged=true)", LogTags.ORDERING);
+            ColonyUpdateDispatcher.submit(mcolony, req -> this.shouldReEvaluateRequest(req, null, "scanIfDue"));
         }
     }
 
+    private void watchRacks(Level level) {
+        List<BlockPos> watched = new ArrayList<>(this.blockScanner.getRackPositions());
+        // The hut block is a rack tile entity too and holds the staging inventory
+        watched.add(this.getPosition());
+        RackChangeTracker.watch(level.dimension(), watched, this.rackChangeListener);
+        this.handlerCache.retainOnly(watched);
+    }
+
+    private void onRackContentsChanged(BlockPos pos) {
+        if (!pos.equals(this.getPosition())) {
+            this.rackSignatures.markDirty(pos);
+        }
+        this.inventoryDirty = true;
+        ++this.rackChangeCount;
+    }
+
     public boolean hasValidTargets(Level level) {
         return this.blockScanner.hasValidTargets(level);
     }
 
+    /**
+     * Gets the index of rack contents, refreshed when the inventory signature
+     * changes.
+     */
+    public RackIndex getRackIndex() {
+        return this.rackIndex;
+    }
+
+    /**
+     * Gets the rack slot quantities promised to requests and deliveries.
+     */
+    public SlotClaims getSlotClaims() {
+        return this.rackIndex.getClaims();
+    }
+
+    /**
+     * Gets the planner that allocates rack stock across open requests.
+     */
+    public RequestBatchPlanner getBatchPlanner() {
+        return this.batchPlanner;
+    }
+
+    /**
+     * Gets the open requests this building's resolvers have seen, indexed by
+     * the items they want.
+     */
+    public OpenRequestIndex getOpenRequests() {
+        return this.openRequests;
+    }
+
+    /**
+     * Gets the requests this building's resolvers could not resolve, valid
+     * while {@link #getResolveStamp()} is unchanged.
+     */
+    public NegativeResolveCache getNegativeResolves() {
+        return this.negativeResolves;
+    }
+
+    /**
+     * Gets the state a "cannot resolve" answer depends on: rack contents and
+     * claims, and the network stock and reservations.
+     */
+    public NegativeResolveCache.Stamp getResolveStamp() {
+        return new NegativeResolveCache.Stamp(this.lastInvSig, this.rackChangeCount,
+                this.getSlotClaims().getReleaseCount(), this.networkIntegration.getNetworkGeneration(),
+                this.networkIntegration.getStockSnapshotVersion(), this.networkIntegration.getReservationVersion(),
+                this.canStageFromNetwork());
+    }
+
     public List<BlockPos> getRackPositions() {
         return this.blockScanner.getRackPositions();
     }
 
     /**
      * Evaluates whether a request should be re-evaluated by MineColonies. Used as a
-     * predicate for onColonyUpdate calls.
+     * visitor for {@link ColonyUpdateDispatcher} walks.
      *
      * @param req
      *            The request to evaluate
-     * @param toReassign
-     *            Optional list to collect IN_PROGRESS request tokens for
-     *            reassignment
+     * @param reassignIn
+     *            If set, IN_PROGRESS requests are also queued for reassignment
+     *            in this colony
      * @param logContext
      *            Context string for debug logging
      * @return true if the request should be re-evaluated
      */
-    private boolean shouldReEvaluateRequest(IRequest<?> req, @Nullable List<IToken<?>> toReassign, String logContext) {
+    private boolean shouldReEvaluateRequest(IRequest<?> req, @Nullable IColony reassignIn, String logContext) {
         boolean isOurType = RequestTypes.isSupplyLinesType(req.getRequest());
         if (!isOurType) {
             return false;
@@ -393,8 +524,8 @@ public class BuildingStockKeeper extends AbstractBuilding {
             result = false; // Waiting for deliveries to complete
         } else if (state == RequestState.IN_PROGRESS) {
             result = true; // Re-evaluate
-            if (toReassign != null) {
-                toReassign.add(req.getId());
+            if (reassignIn != null) {
+                ColonyUpdateDispatcher.reassign(reassignIn, req.getId());
             }
         } else if (state == RequestState.ASSIGNING) {
             result = true; // Looking for a resolver, we can help
@@ -410,26 +541,30 @@ public class BuildingStockKeeper extends AbstractBuilding {
     }
 
     /**
-     * Reassigns IN_PROGRESS requests so they get re-evaluated by MineColonies.
+     * Re-evaluates the SupplyLines requests that want any of the changed items,
+     * or all of them if the changed items are not known.
      *
-     * @param mcolony
-     *            The colony
-     * @param toReassign
-     *            List of request tokens to reassign
+     * @param changed
+     *            items whose quantity changed, or null to re-evaluate everything
      * @param logContext
      *            Context string for debug logging
      */
-    private void reassignRequests(IColony mcolony, List<IToken<?>> toReassign, String logContext) {
-        for (IToken<?> token : toReassign) {
-            try {
-                if (mcolony.getRequestManager().getRequestForToken(token) != null) {
-                    mcolony.getRequestManager().reassignRequest(token, Collections.emptyList());
-                    LOGGER.debug("{} {}: reassigned IN_PROGRESS request {}", LogTags.ORDERING, logContext, token);
-                }
-            } catch (IllegalArgumentException e) {
-                LOGGER.debug("{} {}: request {} already resolved", LogTags.ORDERING, logContext, token);
+    private void reEvaluateRequests(IColony mcolony, @Nullable Collection<ItemMatch.ItemStackKey> changed,
+            String logContext) {
+        Predicate<IRequest<?>> affected;
+        if (changed == null || !ModConfig.SERVER.targetedReEvaluation.get()) {
+            affected = req -> true;
+        } else {
+            Set<IToken<?>> ids = this.openRequests.affectedBy(changed);
+            LOGGER.debug("{} {}: {} changed items affect {} of {} open requests", LogTags.ORDERING, logContext,
+                    changed.size(), ids.size(), this.openRequests.size());
+            if (ids.isEmpty()) {
+                return;
             }
+            affected = req -> ids.contains(req.getId());
         }
+        ColonyUpdateDispatcher.submit(mcolony,
+                req -> affected.test(req) && this.shouldReEvaluateRequest(req, mcolony, logContext));
     }
 
     private void refreshInventorySignatureIfDue(Level level) {
@@ -441,45 +576,115 @@ public class BuildingStockKeeper extends AbstractBuilding {
         if (this.lastInvSigTick != Long.MIN_VALUE && now - this.lastInvSigTick < getDefaultInvSigIntervalTicks()) {
             return;
         }
+        boolean changeDriven = ModConfig.SERVER.changeDrivenRackChecks.get();
+        boolean fullDue = !changeDriven || this.lastFullInvSigTick == Long.MIN_VALUE
+                || now - this.lastFullInvSigTick >= ModConfig.SERVER.rackSafetyPollTicks.get();
+        if (!fullDue && !this.inventoryDirty) {
+            // Nothing reported a change since the last check
+            this.lastInvSigTick = now;
+            return;
+        }
+        if (fullDue) {
+            // Catches changes that bypass the rack, e.g. from other mods' block entities
+            this.rackSignatures.markAllDirty();
+            this.lastFullInvSigTick = now;
+        }
+        this.inventoryDirty = false;
         long sig = this.computeInventorySignature(level);
+        Set<ItemMatch.ItemStackKey> changedItems = this.rackSignatures.drainChangedItems();
         boolean changed = this.lastInvSig == Long.MIN_VALUE || sig != this.lastInvSig;
         long prevSig = this.lastInvSig;
         this.lastInvSig = sig;
         this.lastInvSigTick = now;
+        if (changed) {
+            this.rackIndex.invalidate();
+        }
+        if (fullDue && (mcolony = this.getColony()) != null) {
+            this.openRequests.prune(mcolony.getRequestManager());
+        }
         if (changed && (mcolony = this.getColony()) != null) {
             try {
                 LOGGER.debug("{} Inventory signature changed from {} to {}", LogTags.ORDERING, prevSig, sig);
-                ArrayList<IToken<?>> toReassign = new ArrayList<>();
-                mcolony.getRequestManager().onColonyUpdate(
-                        req -> this.shouldReEvaluateRequest(req, toReassign, "refreshInventorySignatureIfDue"));
-                this.reassignRequests(mcolony, toReassign, "refreshInventorySignatureIfDue");
+                // The first signature after load has nothing to diff against
+                this.reEvaluateRequests(mcolony, prevSig == Long.MIN_VALUE ? null : changedItems,
+                        "refreshInventorySignatureIfDue");
             } catch (Exception e) {
-                LOGGER.error("{} refreshInventorySignatureIfDue: onColonyUpdate threw", LogTags.ORDERING, e);
+                LOGGER.error("{} refreshInventorySignatureIfDue: re-evaluation threw", LogTags.ORDERING, e);
             }
         }
     }
 
     private long computeInventorySignature(Level level) {
         List<BlockPos> racksToHash = this.blockScanner.getRackPositions();
+        this.rackSignatures.update(level, this.handlerCache, racksToHash);
         IItemHandler staging = this.getStagingHandler(level);
-        return InventorySignature.computeInventorySignature(level, racksToHash, staging, 0);
+        this.rackSignatures.trackStaging(staging);
+        return InventorySignature.combine(this.rackSignatures.getCombined(), staging, racksToHash.size(), 0);
     }
 
     @Override
     public void onDestroyed() {
         this.unregisterRS(this.getColony().getWorld());
+        RackChangeTracker.unwatch(this.rackChangeListener);
+        this.leaveCoordinator();
         super.onDestroyed();
     }
 
+    /**
+     * Leaves the colony's coordinator and shared network snapshot while the
+     * hut's chunk is unloaded. The next tick after it loads joins again.
+     */
+    public void onChunkUnloaded() {
+        this.leaveCoordinator();
+    }
+
+    private void leaveCoordinator() {
+        this.networkIntegration.detach();
+        StockKeeperCoordinator.forColony(this.getColony()).unregister(this);
+        this.coordinated = false;
+    }
+
     private void unregisterRS(Level level) {
         this.requestHandler.unregisterRS(level);
     }
 
+    /**
+     * Gets the Create frequency of this hut's Stock Ticker as of the last stock
+     * snapshot, or null if none was taken yet.
+     */
+    @Nullable
+    public UUID getNetworkFrequency() {
+        return this.networkIntegration.getNetworkFrequency();
+    }
+
+    /**
+     * Gets the number of staging requests waiting on the network.
+     */
+    public int getPendingStagingCount() {
+        return this.networkIntegration.getPendingRequestCount();
+    }
+
+    /**
+     * Whether the hut had a working Stock Keeper on its last tick.
+     */
+    public boolean isWorkerActive() {
+        return this.workerActive;
+    }
+
     public boolean hasStockTicker() {
         return this.getBuildingLevel() >= getStockTickerRequiredLevel()
                 && this.blockScanner.getStockTickerPos() != null;
     }
 
+    /**
+     * Whether resolvers may fill requests from the network: the hut is at the
+     * Stock Ticker level and has one. Cached "cannot resolve" answers are
+     * stamped with this, so they are dropped when it changes.
+     */
+    public boolean canStageFromNetwork() {
+        return this.getBuildingLevel() >= getStockTickerRequiredLevel() && this.hasStockTicker();
+    }
+
     public long getStockLevel(ItemStack item) {
         return this.networkIntegration.getStockLevel(item);
     }
@@ -579,35 +784,47 @@ public class BuildingStockKeeper extends AbstractBuilding {
     @SuppressWarnings("deprecation")
     private void updateStockSnapshotIfDue(Level level) {
         this.ensureSkillManagerInitialized();
-        int interval = this.skillManager != null
+        int skillInterval = this.skillManager != null
                 ? this.skillManager.getStockSnapshotIntervalTicks()
                 : getDefaultStockSnapshotIntervalTicks();
+        // Arrivals matter while staging or incoming orders are outstanding
+        boolean busy = this.networkIntegration.hasStagingWork() || this.displayBoardManager.hasActiveOrders();
+        int interval = this.scheduler.getInterval(AdaptiveScheduler.Task.SNAPSHOT, skillInterval,
+                ModConfig.SERVER.snapshotMin.get(), ModConfig.SERVER.snapshotBase.get(), busy);
         SuppliersModule suppliersModule = this.getFirstModuleOccurance(SuppliersModule.class);
         boolean hasSpeculativeSuppliers = suppliersModule != null && suppliersModule.hasAnySpeculativeSupplier();
-        this.networkIntegration.updateStockSnapshotIfDue(level, this.blockScanner.getStockTickerPos(), interval,
-                (increases) -> {
+        boolean ran = this.networkIntegration.updateStockSnapshotIfDue(level, this.blockScanner.getStockTickerPos(),
+                interval, (increases) -> {
+                    List<ItemMatch.ItemStackKey> arrived = new ArrayList<>();
                     // Notify DisplayBoardManager of stock increases to clear matching orders
-                    for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : increases.entrySet()) {
-                        this.displayBoardManager.onStockArrived(entry.getKey(), entry.getValue());
+                    for (int slot = 0; slot < increases.slotCount(); ++slot) {
+                        if (!increases.isUsed(slot))
+                            continue;
+                        ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.byId(increases.keyAt(slot));
+                        if (key == null)
+                            continue;
+                        this.displayBoardManager.onStockArrived(key, increases.valueAt(slot));
+                        arrived.add(key);
                     }
-                    this.reassignPendingRequestsOnStockChange(level);
+                    this.reassignPendingRequestsOnStockChange(arrived);
                 }, hasSpeculativeSuppliers);
+        if (ran) {
+            this.scheduler.onRan(AdaptiveScheduler.Task.SNAPSHOT, busy);
+        }
     }
 
     /**
-     * Called when stock network levels change. Notifies MineColonies to re-evaluate
-     * ASSIGNING and IN_PROGRESS requests that we might now be able to fulfill.
+     * Called when stock network levels increase. Notifies MineColonies to
+     * re-evaluate the ASSIGNING and IN_PROGRESS requests for the arrived items
+     * that we might now be able to fulfill.
      */
-    private void reassignPendingRequestsOnStockChange(Level level) {
+    private void reassignPendingRequestsOnStockChange(Collection<ItemMatch.ItemStackKey> arrived) {
         IColony mcolony = this.getColony();
         if (mcolony == null) {
             return;
         }
         try {
-            ArrayList<IToken<?>> toReassign = new ArrayList<>();
-            mcolony.getRequestManager().onColonyUpdate(
-                    req -> this.shouldReEvaluateRequest(req, toReassign, "reassignPendingRequestsOnStockChange"));
-            this.reassignRequests(mcolony, toReassign, "reassignPendingRequestsOnStockChange");
+            this.reEvaluateRequests(mcolony, arrived, "reassignPendingRequestsOnStockChange");
         } catch (Exception e) {
             LOGGER.error("{} reassignPendingRequestsOnStockChange threw", LogTags.ORDERING, e);
         }
@@ -934,6 +1151,10 @@ public class BuildingStockKeeper extends AbstractBuilding {
     public void deserializeNBT(final CompoundTag compound) {
         super.deserializeNBT(compound);
 
+        if (compound.contains(TAG_STAGING)) {
+            this.networkIntegration.deserializeStaging(compound.getCompound(TAG_STAGING));
+        }
+
         if (compound.contains(TAG_PENDING_MIGRATION)) {
             this.pendingMigration = PanelMigrationData.fromNBT(compound.getCompound(TAG_PENDING_MIGRATION));
             LOGGER.info("{} Restored pending migration data ({} panels)", LogTags.MIGRATION,
@@ -961,6 +1182,10 @@ public class BuildingStockKeeper extends AbstractBuilding {
             compound.put(TAG_PENDING_STATION_MIGRATION, this.pendingStationMigration.toNBT());
         }
 
+        if (this.networkIntegration.hasStagingWork()) {
+            compound.put(TAG_STAGING, this.networkIntegration.serializeStaging());
+        }
+
         return compound;
     }
 }
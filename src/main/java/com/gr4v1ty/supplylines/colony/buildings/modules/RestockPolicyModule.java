@@ -1,13 +1,11 @@
 package com.gr4v1ty.supplylines.colony.buildings.modules;
 
 import com.gr4v1ty.supplylines.colony.buildings.BuildingStockKeeper;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
 import com.gr4v1ty.supplylines.util.ResearchEffects;
 import com.minecolonies.api.colony.buildings.modules.AbstractBuildingModule;
 import com.minecolonies.api.colony.buildings.modules.IPersistentModule;
 import com.minecolonies.api.crafting.ItemStorage;
-import com.simibubi.create.content.logistics.BigItemStack;
-import com.simibubi.create.content.logistics.packager.InventorySummary;
-import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
@@ -213,14 +211,8 @@ public class RestockPolicyModule extends AbstractBuildingModule implements IPers
             if (suppliersModule != null) {
                 for (SuppliersModule.SupplierEntry supplier : suppliersModule.getSuppliers()) {
                     try {
-                        InventorySummary summary = LogisticsManager.getSummaryOfNetwork(supplier.getNetworkId(), false);
-                        if (summary != null && !summary.isEmpty()) {
-                            for (BigItemStack bigStack : summary.getStacks()) {
-                                if (ItemStack.isSameItemSameTags(bigStack.stack, entry.getItem().getItemStack())) {
-                                    remoteStock += bigStack.count;
-                                }
-                            }
-                        }
+                        remoteStock += NetworkSummaryCache.get(supplier.getNetworkId())
+                                .getCount(entry.getItem().getItemStack());
                     } catch (Exception ignored) {
                         // Network may be unloaded or invalid
                     }
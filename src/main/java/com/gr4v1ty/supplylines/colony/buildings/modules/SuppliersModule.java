@@ -1,10 +1,10 @@
 package com.gr4v1ty.supplylines.colony.buildings.modules;
 
+import com.gr4v1ty.supplylines.compat.create.BroadcastCircuitBreaker;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
 import com.gr4v1ty.supplylines.util.ResearchEffects;
 import com.minecolonies.api.colony.buildings.modules.AbstractBuildingModule;
 import com.minecolonies.api.colony.buildings.modules.IPersistentModule;
-import com.simibubi.create.content.logistics.packager.InventorySummary;
-import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
@@ -37,7 +37,9 @@ public class SuppliersModule extends AbstractBuildingModule implements IPersiste
         /** Network is reachable but has no items. */
         EMPTY,
         /** Network could not be queried (may be unloaded or invalid). */
-        OFFLINE
+        OFFLINE,
+        /** Broadcasts keep failing; orders are paused until a retry succeeds. */
+        BACKING_OFF
     }
 
     /**
@@ -350,9 +352,12 @@ public class SuppliersModule extends AbstractBuildingModule implements IPersiste
      * @return the network status.
      */
     private NetworkStatus getNetworkStatus(UUID networkId) {
+        if (BroadcastCircuitBreaker.getState(networkId) != BroadcastCircuitBreaker.State.CLOSED) {
+            return NetworkStatus.BACKING_OFF;
+        }
         try {
-            InventorySummary summary = LogisticsManager.getSummaryOfNetwork(networkId, false);
-            if (summary == null) {
+            NetworkSummaryCache.CachedSummary summary = NetworkSummaryCache.get(networkId);
+            if (!summary.isOnline()) {
                 return NetworkStatus.OFFLINE;
             }
             if (summary.isEmpty()) {
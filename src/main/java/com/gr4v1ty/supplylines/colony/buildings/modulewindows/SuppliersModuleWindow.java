@@ -187,6 +187,7 @@ public class SuppliersModuleWindow extends AbstractModuleWindow<SuppliersModuleV
                         case ONLINE -> "com.supplylines.gui.stockkeeper.suppliers.status.online";
                         case EMPTY -> "com.supplylines.gui.stockkeeper.suppliers.status.empty";
                         case OFFLINE -> "com.supplylines.gui.stockkeeper.suppliers.status.offline";
+                        case BACKING_OFF -> "com.supplylines.gui.stockkeeper.suppliers.status.backoff";
                     };
                     statusLabel.setText(Component.translatable(statusKey));
 
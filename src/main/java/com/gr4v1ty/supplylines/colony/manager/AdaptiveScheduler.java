@@ -0,0 +1,61 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.config.ModConfig;
+import java.util.Arrays;
+
+/**
+ * Adjusts the Stock Keeper's snapshot and staging intervals to its load. While
+ * staging requests or orders are in flight the skill-derived interval is
+ * shortened (down to the skill minimum); while idle it backs off exponentially
+ * towards the skill-derived maximum, the interval at skill level 0, and never
+ * past it.
+ */
+public final class AdaptiveScheduler {
+    public enum Task {
+        SNAPSHOT, STAGING
+    }
+
+    /** Current idle backoff multiplier per task. */
+    private final int[] idleMultipliers = new int[Task.values().length];
+
+    public AdaptiveScheduler() {
+        Arrays.fill(this.idleMultipliers, 1);
+    }
+
+    /**
+     * Gets the interval to use for a task right now.
+     *
+     * @param task
+     *            the task being scheduled
+     * @param skillInterval
+     *            interval derived from worker skill (or config default)
+     * @param minInterval
+     *            lower bound for the busy interval
+     * @param maxInterval
+     *            upper bound for the idle interval
+     * @param busy
+     *            whether there is pending work the task should react to
+     * @return interval in ticks
+     */
+    public int getInterval(Task task, int skillInterval, int minInterval, int maxInterval, boolean busy) {
+        if (busy) {
+            int divisor = ModConfig.SERVER.busyIntervalDivisor.get();
+            return Math.max(Math.min(minInterval, skillInterval), skillInterval / divisor);
+        }
+        long backedOff = (long) skillInterval * this.idleMultipliers[task.ordinal()];
+        return (int) Math.min(Math.max(skillInterval, maxInterval), backedOff);
+    }
+
+    /**
+     * Records that a task ran. Busy runs reset the backoff; idle runs double it.
+     */
+    public void onRan(Task task, boolean busy) {
+        int i = task.ordinal();
+        if (busy) {
+            this.idleMultipliers[i] = 1;
+            return;
+        }
+        int max = ModConfig.SERVER.idleBackoffMaxMultiplier.get();
+        this.idleMultipliers[i] = Math.min(max, this.idleMultipliers[i] * 2);
+    }
+}
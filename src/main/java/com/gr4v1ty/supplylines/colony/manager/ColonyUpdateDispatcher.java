@@ -0,0 +1,143 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.util.LogTags;
+import com.minecolonies.api.colony.IColony;
+import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
+import com.minecolonies.api.colony.requestsystem.request.IRequest;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces {@link IRequestManager#onColonyUpdate} calls. Every walk visits
+ * every request in the colony, and a Stock Keeper can ask for several in one
+ * tick (rescan, inventory change, stock change, speculative scan), as can
+ * several huts in the same colony. Visitors submitted during a tick are run
+ * together in a single walk per colony at the end of the server tick, and the
+ * requests they want reassigned are merged and reassigned once each after the
+ * walk.
+ */
+public final class ColonyUpdateDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColonyUpdateDispatcher.class);
+    private static final Map<IColony, Pending> PENDING = new IdentityHashMap<>();
+
+    private static final class Pending {
+        private final List<Predicate<IRequest<?>>> visitors = new ArrayList<>();
+        private final List<Runnable> afterWalk = new ArrayList<>();
+        private final Set<IToken<?>> toReassign = new LinkedHashSet<>();
+    }
+
+    private ColonyUpdateDispatcher() {
+        // Utility class
+    }
+
+    /**
+     * Queues a visitor for the colony's next update walk.
+     *
+     * @param visitor
+     *            called for every request; returns true to have MineColonies
+     *            re-evaluate it
+     */
+    public static void submit(IColony colony, Predicate<IRequest<?>> visitor) {
+        submit(colony, visitor, null);
+    }
+
+    /**
+     * Queues a visitor for the colony's next update walk.
+     *
+     * @param visitor
+     *            called for every request; returns true to have MineColonies
+     *            re-evaluate it
+     * @param afterWalk
+     *            run once the walk is done, e.g. to act on what the visitor
+     *            collected
+     */
+    public static void submit(IColony colony, Predicate<IRequest<?>> visitor, @Nullable Runnable afterWalk) {
+        Pending pending = PENDING.computeIfAbsent(colony, k -> new Pending());
+        pending.visitors.add(visitor);
+        if (afterWalk != null) {
+            pending.afterWalk.add(afterWalk);
+        }
+    }
+
+    /**
+     * Queues an IN_PROGRESS request for reassignment after the colony's next
+     * update walk. Safe to call from inside a visitor.
+     */
+    public static void reassign(IColony colony, IToken<?> id) {
+        PENDING.computeIfAbsent(colony, k -> new Pending()).toReassign.add(id);
+    }
+
+    /**
+     * Runs the queued walks and reassignments. Called at the end of every
+     * server tick. Anything queued while flushing runs on the next tick.
+     */
+    public static void flush() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<IColony, Pending> e : new ArrayList<>(PENDING.entrySet())) {
+            IColony colony = e.getKey();
+            Pending pending = e.getValue();
+            List<Predicate<IRequest<?>>> visitors = List.copyOf(pending.visitors);
+            List<Runnable> afterWalk = List.copyOf(pending.afterWalk);
+            pending.visitors.clear();
+            pending.afterWalk.clear();
+            IRequestManager manager = colony.getRequestManager();
+            if (!visitors.isEmpty()) {
+                try {
+                    manager.onColonyUpdate(req -> {
+                        boolean reEvaluate = false;
+                        for (Predicate<IRequest<?>> visitor : visitors) {
+                            // Every visitor sees every request, even once one said yes
+                            reEvaluate |= visitor.test(req);
+                        }
+                        return reEvaluate;
+                    });
+                } catch (RuntimeException ex) {
+                    LOGGER.error("{} Colony {} update: onColonyUpdate threw", LogTags.ORDERING, colony.getID(), ex);
+                }
+            }
+            for (Runnable r : afterWalk) {
+                try {
+                    r.run();
+                } catch (RuntimeException ex) {
+                    LOGGER.error("{} Colony {} update: post-walk task threw", LogTags.ORDERING, colony.getID(), ex);
+                }
+            }
+            List<IToken<?>> toReassign = List.copyOf(pending.toReassign);
+            pending.toReassign.clear();
+            for (IToken<?> id : toReassign) {
+                try {
+                    if (manager.getRequestForToken(id) != null) {
+                        manager.reassignRequest(id, Collections.emptyList());
+                    }
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.debug("{} Colony {} update: request {} already resolved", LogTags.ORDERING,
+                            colony.getID(), id);
+                }
+            }
+            if (!visitors.isEmpty() || !toReassign.isEmpty()) {
+                LOGGER.debug("{} Colony {} update: {} visitors in one walk, {} reassigned", LogTags.ORDERING,
+                        colony.getID(), visitors.size(), toReassign.size());
+            }
+            if (pending.visitors.isEmpty() && pending.afterWalk.isEmpty() && pending.toReassign.isEmpty()) {
+                PENDING.remove(colony, pending);
+            }
+        }
+    }
+
+    /** Drops everything queued. Called on server stop. */
+    public static void clear() {
+        PENDING.clear();
+    }
+}
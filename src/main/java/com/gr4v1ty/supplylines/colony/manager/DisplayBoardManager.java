@@ -4,6 +4,7 @@ import com.gr4v1ty.supplylines.colony.manager.SpeculativeOrderManager.Speculativ
 import com.gr4v1ty.supplylines.compat.create.DisplayBoardWriter;
 import com.gr4v1ty.supplylines.config.ModConfig;
 import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.gr4v1ty.supplylines.util.TimingWheel;
 import com.minecolonies.api.colony.requestsystem.token.IToken;
 import net.minecraft.ChatFormatting;
 import net.minecraft.core.BlockPos;
@@ -43,6 +44,9 @@ public final class DisplayBoardManager {
      */
     private final Map<IToken<?>, SpeculativeOrder> speculativeOrdersByRequest = new LinkedHashMap<>();
 
+    /** Expiry deadlines of active orders; stale entries are skipped when they fire */
+    private final TimingWheel<IncomingOrder> expiryWheel = new TimingWheel<>();
+
     /** Listener for order cleared events (item key when order completes) */
     @Nullable
     private Consumer<ItemMatch.ItemStackKey> orderClearedListener;
@@ -103,9 +107,10 @@ public final class DisplayBoardManager {
      *            The order that was placed
      */
     public void onOrderPlaced(IncomingOrder order) {
-        ItemMatch.ItemStackKey itemKey = new ItemMatch.ItemStackKey(order.getItem());
+        ItemMatch.ItemStackKey itemKey = ItemMatch.ItemStackKey.of(order.getItem());
         List<IncomingOrder> orderList = activeOrders.computeIfAbsent(itemKey, k -> new ArrayList<>());
         orderList.add(order);
+        expiryWheel.schedule(order, getExpiryTick(order) + 1);
 
         // Index speculative orders by request ID for fast cleanup
         if (order instanceof SpeculativeOrder specOrder) {
@@ -174,7 +179,7 @@ public final class DisplayBoardManager {
         }
 
         // Remove from main tracking map
-        ItemMatch.ItemStackKey itemKey = new ItemMatch.ItemStackKey(order.getItem());
+        ItemMatch.ItemStackKey itemKey = ItemMatch.ItemStackKey.of(order.getItem());
         List<IncomingOrder> orders = activeOrders.get(itemKey);
         if (orders != null) {
             orders.remove(order);
@@ -196,32 +201,36 @@ public final class DisplayBoardManager {
      *            Current game tick
      */
     public void cleanupExpiredOrders(long now) {
-        Iterator<Map.Entry<ItemMatch.ItemStackKey, List<IncomingOrder>>> it = activeOrders.entrySet().iterator();
-
-        while (it.hasNext()) {
-            Map.Entry<ItemMatch.ItemStackKey, List<IncomingOrder>> entry = it.next();
-            ItemMatch.ItemStackKey itemKey = entry.getKey();
-            List<IncomingOrder> orders = entry.getValue();
-            int sizeBefore = orders.size();
-
-            orders.removeIf(order -> {
-                long expiryTick = order.getEstimatedArrivalTick() + getOrderExpiryBufferTicks();
-                if (now > expiryTick) {
-                    removeFromSpeculativeIndex(order);
-                    LOGGER.warn("Expiring order for {} (past ETA)", order.getItem().getDisplayName().getString());
-                    return true;
-                }
-                return false;
-            });
+        expiryWheel.advance(now, order -> expireOrder(order, now));
+    }
 
-            if (orders.size() < sizeBefore) {
-                notifyOrderCleared(itemKey);
-            }
+    private long getExpiryTick(IncomingOrder order) {
+        return order.getEstimatedArrivalTick() + getOrderExpiryBufferTicks();
+    }
 
-            if (orders.isEmpty()) {
-                it.remove();
-            }
+    /**
+     * Expires an order whose deadline fired, unless it was already cleared or
+     * the expiry buffer setting has since been raised.
+     */
+    private void expireOrder(IncomingOrder order, long now) {
+        ItemMatch.ItemStackKey itemKey = ItemMatch.ItemStackKey.of(order.getItem());
+        List<IncomingOrder> orders = activeOrders.get(itemKey);
+        if (orders == null || !orders.contains(order)) {
+            return;
+        }
+        long expiryTick = getExpiryTick(order);
+        if (now <= expiryTick) {
+            expiryWheel.schedule(order, expiryTick + 1);
+            return;
+        }
+
+        orders.remove(order);
+        removeFromSpeculativeIndex(order);
+        if (orders.isEmpty()) {
+            activeOrders.remove(itemKey);
         }
+        LOGGER.warn("Expiring order for {} (past ETA)", order.getItem().getDisplayName().getString());
+        notifyOrderCleared(itemKey);
     }
 
     /**
@@ -264,6 +273,13 @@ public final class DisplayBoardManager {
         return activeOrders.values().stream().mapToInt(List::size).sum();
     }
 
+    /**
+     * Whether any order is still in flight.
+     */
+    public boolean hasActiveOrders() {
+        return !activeOrders.isEmpty();
+    }
+
     // ==================== Display Methods ====================
 
     /**
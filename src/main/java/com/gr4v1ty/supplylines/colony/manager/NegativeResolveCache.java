@@ -0,0 +1,126 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.util.LogTags;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import java.util.HashSet;
+import java.util.Set;
+import net.minecraft.core.BlockPos;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Requests a building's resolvers found they could not resolve, together with
+ * the state that answer was based on. MineColonies keeps asking about requests
+ * nobody can fill; while that state is unchanged the answer is still no, and
+ * the rack pick and network scan are skipped.
+ * <p>
+ * All entries share one {@link Stamp}. Once racks, claims or network stock
+ * move on, every entry is dropped at once.
+ */
+public final class NegativeResolveCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NegativeResolveCache.class);
+
+    private final Set<IToken<?>> unresolvable = new HashSet<>();
+    @Nullable
+    private Stamp stamp;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    /**
+     * State a negative answer depends on.
+     *
+     * @param inventorySignature
+     *            combined rack and staging signature
+     * @param rackChanges
+     *            rack change reports, which arrive before the signature is
+     *            refreshed
+     * @param claimReleases
+     *            rack slot claims released
+     * @param networkGeneration
+     *            shared network snapshots the hut switched between, since
+     *            versions of different snapshots can coincide
+     * @param stockVersion
+     *            network stock snapshot version
+     * @param reservationVersion
+     *            network reservation ledger version
+     * @param networkEnabled
+     *            whether the hut can stage from the network at all
+     */
+    public record Stamp(long inventorySignature, long rackChanges, long claimReleases, long networkGeneration,
+            long stockVersion, long reservationVersion, boolean networkEnabled) {
+    }
+
+    /**
+     * Whether a request was found unresolvable under the current stamp.
+     */
+    public boolean isKnownUnresolvable(IToken<?> id, Stamp current) {
+        this.advance(current);
+        if (this.unresolvable.contains(id)) {
+            ++this.hits;
+            return true;
+        }
+        ++this.misses;
+        return false;
+    }
+
+    /**
+     * Records that a request could not be resolved under the current stamp.
+     */
+    public void markUnresolvable(IToken<?> id, Stamp current) {
+        this.advance(current);
+        this.unresolvable.add(id);
+    }
+
+    /**
+     * Drops a request, e.g. once it is resolved or cancelled.
+     */
+    public void forget(IToken<?> id) {
+        this.unresolvable.remove(id);
+    }
+
+    /**
+     * Gets the number of checks answered from the cache.
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Logs the hit and miss counts since the last report, and how often a
+     * stamp change dropped the entries, then resets them. Called every
+     * {@code cacheStatsLogIntervalTicks}.
+     *
+     * @param building
+     *            position of the owning hut
+     */
+    public void logStats(BlockPos building) {
+        long lookups = this.hits + this.misses;
+        LOGGER.info("{} Negative resolve cache at {}: {} hits, {} misses ({}% hit rate), {} invalidations, {} cached",
+                LogTags.ORDERING, building.toShortString(), this.hits, this.misses,
+                lookups > 0 ? this.hits * 100 / lookups : 0, this.invalidations, this.unresolvable.size());
+        this.hits = 0L;
+        this.misses = 0L;
+        this.invalidations = 0L;
+    }
+
+    public int size() {
+        return this.unresolvable.size();
+    }
+
+    public void clear() {
+        this.unresolvable.clear();
+        this.stamp = null;
+    }
+
+    private void advance(Stamp current) {
+        if (!current.equals(this.stamp)) {
+            if (!this.unresolvable.isEmpty()) {
+                ++this.invalidations;
+            }
+            this.unresolvable.clear();
+            this.stamp = current;
+        }
+    }
+}
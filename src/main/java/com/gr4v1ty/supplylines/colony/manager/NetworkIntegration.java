@@ -1,33 +1,38 @@
 package com.gr4v1ty.supplylines.colony.manager;
 
 import com.gr4v1ty.supplylines.colony.model.StagingRequest;
+import com.gr4v1ty.supplylines.compat.create.BroadcastCircuitBreaker;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
 import com.gr4v1ty.supplylines.config.ModConfig;
-import com.gr4v1ty.supplylines.rs.util.DeliveryPlanning;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
 import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.gr4v1ty.supplylines.util.TimingWheel;
+import com.gr4v1ty.supplylines.util.inventory.HandlerCache;
 import com.gr4v1ty.supplylines.util.inventory.RackPicker;
 import com.minecolonies.api.colony.IColony;
 import com.minecolonies.api.colony.requestsystem.requestable.Burnable;
 import com.minecolonies.api.colony.requestsystem.requestable.Food;
-import com.minecolonies.api.colony.requestsystem.requestable.Stack;
 import com.minecolonies.api.colony.requestsystem.requestable.StackList;
 import com.minecolonies.api.colony.requestsystem.requestable.Tool;
-import net.minecraft.world.level.block.entity.FurnaceBlockEntity;
 import com.minecolonies.api.colony.requestsystem.token.IToken;
 import com.simibubi.create.content.logistics.BigItemStack;
-import com.simibubi.create.content.logistics.packager.InventorySummary;
 import com.simibubi.create.content.logistics.packagerLink.LogisticallyLinkedBehaviour;
 import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
 import com.simibubi.create.content.logistics.stockTicker.PackageOrderWithCrafts;
 import com.simibubi.create.content.logistics.stockTicker.StockTickerBlockEntity;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.function.IntSupplier;
 import java.util.function.Predicate;
 import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.tags.TagKey;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
@@ -41,6 +46,9 @@ import org.slf4j.LoggerFactory;
 public final class NetworkIntegration {
     private static final Logger LOGGER = LoggerFactory.getLogger(NetworkIntegration.class);
     private static final String DELIVERY_FROGPORT_NAME = "SK_Deliveries";
+    private static final String TAG_PENDING = "Pending";
+    private static final String TAG_BUFFERED = "Buffered";
+    private static final String TAG_LEADER = "Leader";
 
     /** Provider for staging timeout ticks (per-building setting) */
     @Nullable
@@ -65,13 +73,22 @@ public final class NetworkIntegration {
     private static long getBufferWindowTicks() {
         return ModConfig.SERVER.bufferWindowTicks.get();
     }
-    private final Map<IToken<?>, StagingRequest> pendingStagingRequests = new HashMap<>();
-    private final Map<ItemMatch.ItemStackKey, Long> stockLevels = new HashMap<ItemMatch.ItemStackKey, Long>();
-    private final Map<ItemMatch.ItemStackKey, Long> previousStockLevels = new HashMap<ItemMatch.ItemStackKey, Long>();
+    private final StagingTable pendingStagingRequests = new StagingTable();
+    /** Snapshot of the Stock Ticker's network, shared with other huts on the same frequency */
+    @Nullable
+    private SharedStock sharedStock;
+    private StockSnapshot stockSnapshot = new StockSnapshot();
+    private StockIndex stockIndex = new StockIndex();
+    /** The shared snapshot's ledger, or one of our own until the hut joins one */
+    private StockReservationLedger reservations = new StockReservationLedger();
+    private long networkGeneration;
+    private final TimingWheel<StagingRequest> stagingTimeouts = new TimingWheel<>();
     private final Map<ItemMatch.ItemStackKey, Long> stockGauges = new HashMap<ItemMatch.ItemStackKey, Long>();
     private long lastStockSnapshotTick = Long.MIN_VALUE;
+    @Nullable
+    private UUID networkFrequency;
     private long lastStagingProcessTick = Long.MIN_VALUE;
-    private final Map<IToken<?>, StagingRequest> bufferedRequests = new HashMap<>();
+    private final StagingTable bufferedRequests = new StagingTable();
     private long lastBufferFlushTick = Long.MIN_VALUE;
     private final IColony colony;
 
@@ -79,17 +96,29 @@ public final class NetworkIntegration {
         this.colony = colony;
     }
 
-    public void updateStockSnapshotIfDue(Level level, @Nullable BlockPos stockTickerPos, int stockSnapshotIntervalTicks,
-            @Nullable StockChangeListener stockChangeListener, boolean hasSpeculativeSuppliers) {
+    /**
+     * Refreshes the stock snapshot if the interval has elapsed.
+     *
+     * @return true if the interval had elapsed and a refresh was attempted
+     */
+    public boolean updateStockSnapshotIfDue(Level level, @Nullable BlockPos stockTickerPos,
+            int stockSnapshotIntervalTicks, @Nullable StockChangeListener stockChangeListener,
+            boolean hasSpeculativeSuppliers) {
         long now = level.getGameTime();
         if (now <= 0L) {
-            return;
+            return false;
         }
         if (this.lastStockSnapshotTick != Long.MIN_VALUE
                 && now - this.lastStockSnapshotTick < (long) stockSnapshotIntervalTicks) {
-            return;
+            return false;
         }
         this.lastStockSnapshotTick = now;
+        this.refreshStockSnapshot(level, stockTickerPos, now, stockChangeListener, hasSpeculativeSuppliers);
+        return true;
+    }
+
+    private void refreshStockSnapshot(Level level, @Nullable BlockPos stockTickerPos, long now,
+            @Nullable StockChangeListener stockChangeListener, boolean hasSpeculativeSuppliers) {
         if (stockTickerPos == null) {
             LOGGER.warn("{} No Stock Ticker position found - cannot update stock snapshot!", LogTags.INVENTORY);
             return;
@@ -109,86 +138,51 @@ public final class NetworkIntegration {
                         behaviour != null ? behaviour.freqId : "N/A");
                 return;
             }
-            InventorySummary summary = LogisticsManager.getSummaryOfNetwork(behaviour.freqId, false);
-            boolean stockChanged = false;
-            HashMap<ItemMatch.ItemStackKey, Long> newStockLevels = new HashMap<ItemMatch.ItemStackKey, Long>();
-            if (summary != null && !summary.isEmpty()) {
-                List<BigItemStack> stacks = summary.getStacks();
-                for (BigItemStack bigStack : stacks) {
-                    if (bigStack == null || bigStack.stack == null)
-                        continue;
-                    ItemMatch.ItemStackKey key = new ItemMatch.ItemStackKey(bigStack.stack);
-                    long existingQty = newStockLevels.getOrDefault(key, 0L);
-                    newStockLevels.put(key, existingQty + (long) bigStack.count);
-                }
-            } else if (!hasSpeculativeSuppliers) {
-                LOGGER.warn(
-                        "{} Network summary is empty and no speculative suppliers configured - Stock Keeper has no item sources",
-                        LogTags.INVENTORY);
-            }
-            if (!this.previousStockLevels.isEmpty()) {
-                for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : this.previousStockLevels.entrySet()) {
-
-                    @SuppressWarnings("unused")
-                    long newQty;
-
-                    long oldQty = entry.getValue();
-                    if (oldQty == (newQty = newStockLevels.getOrDefault(entry.getKey(), 0L).longValue()))
-                        continue;
-                    stockChanged = true;
-                    break;
-                }
-                if (!stockChanged) {
-                    for (ItemMatch.ItemStackKey key : newStockLevels.keySet()) {
-                        if (this.previousStockLevels.containsKey(key))
-                            continue;
-                        stockChanged = true;
-                        break;
-                    }
-                }
-            } else {
-                stockChanged = !newStockLevels.isEmpty();
-            }
-
-            // Compute stock increases (deltas) for arrival detection
-            Map<ItemMatch.ItemStackKey, Long> stockIncreases = new HashMap<>();
-            for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : newStockLevels.entrySet()) {
-                long oldQty = this.stockLevels.getOrDefault(entry.getKey(), 0L);
-                long newQty = entry.getValue();
-                if (newQty > oldQty) {
-                    stockIncreases.put(entry.getKey(), newQty - oldQty);
-                }
+            SharedStock shared = StockKeeperCoordinator.forColony(this.colony).join(this, this.sharedStock,
+                    behaviour.freqId);
+            if (shared != this.sharedStock) {
+                this.moveReservations(shared.getReservations());
+                ++this.networkGeneration;
             }
-
-            this.previousStockLevels.clear();
-            this.previousStockLevels.putAll(this.stockLevels);
-            this.stockLevels.clear();
-            this.stockLevels.putAll(newStockLevels);
-
+            this.sharedStock = shared;
+            this.networkFrequency = behaviour.freqId;
+            this.stockSnapshot = shared.getSnapshot();
+            this.stockIndex = shared.getIndex();
+            // Another hut on the same frequency may already have rebuilt it this tick
+            shared.refreshIfDue(now, hasSpeculativeSuppliers);
+            ItemCountTable stockIncreases = shared.getPendingIncreases(this);
             if (stockChangeListener != null && !stockIncreases.isEmpty()) {
                 stockChangeListener.onStockChanged(stockIncreases);
             }
+            stockIncreases.clear();
         } catch (Exception e) {
             LOGGER.error("{} Failed to update stock snapshot from Stock Ticker", LogTags.INVENTORY, e);
         }
     }
 
-    public void processStagingRequestsIfDue(Level level, @Nullable BlockPos stockTickerPos,
-            List<BlockPos> stagingRackPositions, int stagingProcessIntervalTicks, Runnable reassignmentCallback) {
+    /**
+     * Processes pending staging requests if the interval has elapsed.
+     *
+     * @return true if the interval had elapsed and the requests were processed
+     */
+    public boolean processStagingRequestsIfDue(Level level, @Nullable BlockPos stockTickerPos,
+            List<BlockPos> stagingRackPositions, HandlerCache handlers, int stagingProcessIntervalTicks,
+            Runnable reassignmentCallback) {
         long now = level.getGameTime();
         if (now <= 0L) {
-            return;
+            return false;
         }
         if (this.lastStagingProcessTick != Long.MIN_VALUE
                 && now - this.lastStagingProcessTick < (long) stagingProcessIntervalTicks) {
-            return;
+            return false;
         }
         this.lastStagingProcessTick = now;
-        this.processStagingRequests(level, stockTickerPos, stagingRackPositions, reassignmentCallback);
+        this.processStagingRequests(level, stockTickerPos, stagingRackPositions, handlers, reassignmentCallback);
+        return true;
     }
 
     private void processStagingRequests(Level level, @Nullable BlockPos stockTickerPos,
-            List<BlockPos> stagingRackPositions, Runnable reassignmentCallback) {
+            List<BlockPos> stagingRackPositions, HandlerCache handlers, Runnable reassignmentCallback) {
         this.flushBufferedRequestsIfDue(level);
         if (this.pendingStagingRequests.isEmpty()) {
             return;
@@ -207,31 +201,37 @@ public final class NetworkIntegration {
                     LogTags.DISPATCH);
             return;
         }
-        Iterator<Map.Entry<IToken<?>, StagingRequest>> it = this.pendingStagingRequests.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<IToken<?>, StagingRequest> entry = it.next();
-            StagingRequest staging = entry.getValue();
+        // One histogram of the staging racks serves every arrival check in this pass
+        ItemCountTable staged = RackPicker.countRackContents(level, handlers, stagingRackPositions);
+        for (StagingRequest staging : this.pendingStagingRequests.snapshot()) {
+            if (!this.pendingStagingRequests.contains(staging)) {
+                // Removed earlier in this pass
+                continue;
+            }
             if (staging.state == StagingRequest.State.CANCELLED) {
-                it.remove();
+                this.reservations.release(staging);
+                this.pendingStagingRequests.remove(staging);
                 continue;
             }
-            if (staging.bundleLeaderId != null) {
-                StagingRequest leader = this.pendingStagingRequests.get(staging.bundleLeaderId);
-                if (leader == null) {
+            if (staging.bundleLeader != null) {
+                StagingRequest leader = staging.bundleLeader;
+                if (!this.pendingStagingRequests.contains(leader)) {
                     // Leader completed - check if follower items arrived in staging
-                    boolean available = this.isAvailableInStaging(level, stagingRackPositions, staging.item,
-                            staging.quantity);
+                    boolean available = this.claimFromStaging(staged, staging);
                     if (available) {
                         LOGGER.debug(
                                 "{} Bundled follower (item={}) leader completed - items available, marking completed",
                                 LogTags.DISPATCH, staging.item.getHoverName().getString());
                         staging.state = StagingRequest.State.COMPLETED;
-                        it.remove();
+                        this.reservations.release(staging);
+                        this.pendingStagingRequests.remove(staging);
                         reassignmentCallback.run();
                     } else {
-                        LOGGER.debug("{} Bundled follower (item={}) leader completed - items not available, removing",
+                        // Track it on its own from now on; it is re-broadcast if the leader never went out
+                        LOGGER.debug("{} Bundled follower (item={}) leader gone - items not available, detaching",
                                 LogTags.DISPATCH, staging.item.getHoverName().getString());
-                        it.remove();
+                        staging.bundleLeader = null;
+                        this.stagingTimeouts.schedule(staging, this.getStagingDeadline(staging));
                     }
                     continue;
                 }
@@ -239,36 +239,70 @@ public final class NetworkIntegration {
                     staging.state = StagingRequest.State.BROADCASTED;
                     staging.broadcasted = true;
                 }
-                if (staging.state != StagingRequest.State.BROADCASTED
-                        || !this.isAvailableInStaging(level, stagingRackPositions, staging.item, staging.quantity))
+                if (staging.state != StagingRequest.State.BROADCASTED || !this.claimFromStaging(staged, staging))
                     continue;
                 staging.state = StagingRequest.State.COMPLETED;
-                it.remove();
+                this.reservations.release(staging);
+                this.pendingStagingRequests.remove(staging);
                 reassignmentCallback.run();
                 continue;
             }
             if (!staging.broadcasted || staging.state == StagingRequest.State.QUEUED) {
+                long fetchCount = NetworkSummaryCache.getFetchCount();
                 boolean success = this.broadcastStagingRequest(level, behaviour.freqId, staging);
                 if (!success)
                     continue;
                 staging.broadcasted = true;
                 staging.state = StagingRequest.State.BROADCASTED;
+                // The package's items leave the network; later snapshots stop counting them
+                this.reservations.ship(staging, fetchCount);
+                for (StagingRequest follower : this.pendingStagingRequests.values()) {
+                    if (follower.bundleLeader == staging) {
+                        this.reservations.ship(follower, fetchCount);
+                    }
+                }
                 continue;
             }
             if (staging.state != StagingRequest.State.BROADCASTED)
                 continue;
-            if (this.isAvailableInStaging(level, stagingRackPositions, staging.item, staging.quantity)) {
+            if (this.claimFromStaging(staged, staging)) {
                 staging.state = StagingRequest.State.COMPLETED;
-                it.remove();
+                this.reservations.release(staging);
+                this.pendingStagingRequests.remove(staging);
                 reassignmentCallback.run();
-                continue;
             }
-            long elapsed = level.getGameTime() - staging.requestedAtTick;
-            if (elapsed <= getStagingTimeoutTicks())
-                continue;
-            staging.state = StagingRequest.State.CANCELLED;
-            it.remove();
         }
+        long now = level.getGameTime();
+        this.stagingTimeouts.advance(now, staging -> this.onStagingTimeout(staging, now));
+    }
+
+    private long getStagingDeadline(StagingRequest staging) {
+        return staging.requestedAtTick + this.getStagingTimeoutTicks() + 1L;
+    }
+
+    /**
+     * Cancels a staging request whose timeout has passed. Requests that already
+     * finished are ignored. Followers are dropped from the wheel and scheduled
+     * again if they get detached from their leader.
+     */
+    private void onStagingTimeout(StagingRequest staging, long now) {
+        if (!this.pendingStagingRequests.contains(staging) || staging.bundleLeader != null) {
+            return;
+        }
+        if (staging.state != StagingRequest.State.BROADCASTED) {
+            // Broadcast keeps being retried; only broadcast requests time out
+            this.stagingTimeouts.schedule(staging, now + this.getStagingTimeoutTicks());
+            return;
+        }
+        long deadline = this.getStagingDeadline(staging);
+        if (now < deadline) {
+            // The timeout setting was raised since this was scheduled
+            this.stagingTimeouts.schedule(staging, deadline);
+            return;
+        }
+        staging.state = StagingRequest.State.CANCELLED;
+        this.reservations.release(staging);
+        this.pendingStagingRequests.remove(staging);
     }
 
     private void flushBufferedRequestsIfDue(Level level) {
@@ -287,28 +321,57 @@ public final class NetworkIntegration {
             return;
         }
         LOGGER.info("{} Flushing {} buffered requests to pending", LogTags.DISPATCH, this.bufferedRequests.size());
-        ArrayList<StagingRequest> allRequests = new ArrayList<StagingRequest>(this.bufferedRequests.values());
-        StagingRequest leader = allRequests.get(0);
-        leader.bundleLeaderId = null;
-        this.pendingStagingRequests.put(leader.parentRequestId, leader);
-        for (int i = 1; i < allRequests.size(); ++i) {
-            StagingRequest follower = allRequests.get(i);
-            follower.bundleLeaderId = leader.parentRequestId;
-            this.pendingStagingRequests.put(follower.parentRequestId, follower);
-        }
-        LOGGER.debug("{} Bundled {} requests into single package for broadcast", LogTags.DISPATCH, allRequests.size());
+        List<List<StagingRequest>> packages = StagingBundler.bundle(this.bufferedRequests.values(),
+                ModConfig.SERVER.maxStacksPerPackage.get());
+        for (List<StagingRequest> bundle : packages) {
+            // Each package has its own leader and is broadcast independently
+            StagingRequest leader = bundle.get(0);
+            leader.bundleLeader = null;
+            this.putPending(leader);
+            for (int i = 1; i < bundle.size(); ++i) {
+                StagingRequest follower = bundle.get(i);
+                follower.bundleLeader = leader;
+                this.putPending(follower);
+            }
+        }
+        LOGGER.debug("{} Bundled {} requests into {} package(s) for broadcast", LogTags.DISPATCH,
+                this.bufferedRequests.size(), packages.size());
         this.bufferedRequests.clear();
         LOGGER.debug("{} After flush: {} pending requests", LogTags.DISPATCH, this.pendingStagingRequests.size());
     }
 
+    private void putPending(StagingRequest staging) {
+        StagingRequest displaced = this.pendingStagingRequests.put(staging);
+        if (displaced != null && displaced != staging) {
+            this.reservations.release(displaced);
+        }
+        this.stagingTimeouts.schedule(staging, this.getStagingDeadline(staging));
+    }
+
+    /**
+     * Buffers a staging request and reserves its quantity. A request already
+     * buffered for the same parent and item is replaced and its reservation
+     * released.
+     */
+    private void bufferStaging(StagingRequest staging) {
+        this.reservations.reserve(staging);
+        StagingRequest displaced = this.bufferedRequests.put(staging);
+        if (displaced != null && displaced != staging) {
+            this.reservations.release(displaced);
+        }
+    }
+
     private boolean broadcastStagingRequest(Level level, UUID freqId, StagingRequest staging) {
+        if (!BroadcastCircuitBreaker.beginAttempt(freqId)) {
+            // Backing off after failed broadcasts; stays queued for a later pass
+            return false;
+        }
         try {
             ArrayList<BigItemStack> orderedStacks = new ArrayList<BigItemStack>();
             orderedStacks.add(new BigItemStack(staging.item.copy(), staging.quantity));
-            if (staging.bundleLeaderId == null) {
-                for (Map.Entry<IToken<?>, StagingRequest> entry : this.pendingStagingRequests.entrySet()) {
-                    StagingRequest other = entry.getValue();
-                    if (other.bundleLeaderId == null || !other.bundleLeaderId.equals(staging.parentRequestId))
+            if (staging.bundleLeader == null) {
+                for (StagingRequest other : this.pendingStagingRequests.values()) {
+                    if (other.bundleLeader != staging)
                         continue;
                     orderedStacks.add(new BigItemStack(other.item.copy(), other.quantity));
                 }
@@ -319,6 +382,7 @@ public final class NetworkIntegration {
                     orderedStacks.size());
             boolean success = LogisticsManager.broadcastPackageRequest(freqId,
                     LogisticallyLinkedBehaviour.RequestType.RESTOCK, order, null, address);
+            BroadcastCircuitBreaker.recordResult(freqId, success);
             if (success) {
                 LOGGER.debug("{} Successfully broadcast package with {} item type(s) to Create network",
                         LogTags.DISPATCH, orderedStacks.size());
@@ -328,144 +392,193 @@ public final class NetworkIntegration {
             return success;
         } catch (Exception e) {
             LOGGER.error("{} Failed to broadcast staging request", LogTags.DISPATCH, e);
+            BroadcastCircuitBreaker.recordResult(freqId, false);
             return false;
         }
     }
 
-    private boolean isAvailableInStaging(Level level, List<BlockPos> stagingRackPositions, ItemStack item,
-            int quantity) {
-        List<DeliveryPlanning.Pick> picks = RackPicker.pickFromRacks(level, this.colony, stagingRackPositions,
-                new Stack(item, quantity, 1));
-        int totalPicked = picks.stream().mapToInt(p -> p.count).sum();
-        return totalPicked >= quantity;
+    /**
+     * Checks whether a staging request's items have arrived, according to the
+     * rack histogram of the current pass. If so, they are taken out of the
+     * histogram so that two requests for the same item cannot both claim one
+     * delivery.
+     */
+    private boolean claimFromStaging(ItemCountTable staged, StagingRequest staging) {
+        ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.find(staging.item);
+        if (key == null) {
+            return false;
+        }
+        long available = staged.get(key.getId());
+        if (available < (long) staging.quantity) {
+            return false;
+        }
+        staged.put(key.getId(), available - staging.quantity);
+        return true;
     }
 
     public boolean requestFromStockNetwork(ItemStack item, int quantity, IToken<?> requestId, Level level) {
-        if (this.stockLevels.isEmpty()) {
+        if (this.stockSnapshot.isEmpty()) {
             LOGGER.warn("{} Cannot request from stock network - no stock data available", LogTags.ORDERING);
             return false;
         }
-        long available = this.stockLevels.getOrDefault(new ItemMatch.ItemStackKey(item), 0L);
+        long available = this.getStockLevel(item);
         if (available < (long) quantity) {
             return false;
         }
-        this.bufferedRequests.put(requestId, StagingRequest.create(item, quantity, level.getGameTime(), requestId));
+        this.bufferStaging(StagingRequest.create(item, quantity, level.getGameTime(), requestId));
         return true;
     }
 
     public boolean hasMatchingToolInNetwork(Tool toolRequest) {
-        if (this.stockLevels.isEmpty()) {
-            return false;
-        }
-        for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : this.stockLevels.entrySet()) {
-            ItemStack stack;
-            ItemMatch.ItemStackKey key = entry.getKey();
-            long quantity = entry.getValue();
-            if (quantity <= 0L || (stack = key.toStack()).isDamaged() || !toolRequest.matches(stack))
-                continue;
-            return true;
-        }
-        return false;
+        return this.findMatchingTool(toolRequest) != null;
     }
 
     public boolean requestToolFromStockNetwork(Tool toolRequest, IToken<?> requestId, Level level) {
-        if (this.stockLevels.isEmpty()) {
+        if (this.stockSnapshot.isEmpty()) {
             LOGGER.warn("{} Cannot request tool from stock network - no stock data available", LogTags.ORDERING);
             return false;
         }
-        for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : this.stockLevels.entrySet()) {
-            ItemMatch.ItemStackKey key = entry.getKey();
-            long quantity = entry.getValue();
-            if (quantity <= 0L)
-                continue;
-            ItemStack stack = key.toStack();
-            if (stack.isDamaged() || !toolRequest.matches(stack))
+        ItemStack stack = this.findMatchingTool(toolRequest);
+        if (stack == null) {
+            return false;
+        }
+        this.bufferStaging(StagingRequest.create(stack.copy(), 1, level.getGameTime(), requestId));
+        return true;
+    }
+
+    @Nullable
+    private ItemStack findMatchingTool(Tool toolRequest) {
+        IntArrayList candidates = this.getIndex().toolIds();
+        for (int i = 0; i < candidates.size(); ++i) {
+            int id = candidates.getInt(i);
+            if (this.getUncommittedStock(id) <= 0L)
                 continue;
-            this.bufferedRequests.put(requestId, StagingRequest.create(stack, 1, level.getGameTime(), requestId));
-            return true;
+            ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.byId(id);
+            if (key != null && toolRequest.matches(key.prototype())) {
+                return key.prototype();
+            }
         }
-        return false;
+        return null;
     }
 
     public long getStockLevelForTag(TagKey<Item> tag) {
-        return getStockLevelMatching(stack -> stack.is(tag));
+        return this.getStockLevelMatching(this.getIndex().idsForTag(tag), null);
     }
 
     public boolean requestFromStockNetworkByTag(TagKey<Item> tag, int quantity, IToken<?> requestId, Level level) {
-        return requestFromStockNetworkGeneric(stack -> stack.is(tag), quantity, requestId, level, "Tag");
+        return this.requestFromStockNetworkGeneric(this.getIndex().idsForTag(tag), null, quantity, requestId, level,
+                "Tag");
     }
 
     public long getStockLevelForStackList(StackList stackList) {
-        return getStockLevelMatching(stackList::matches);
+        return this.getStockLevelMatching(this.candidatesFor(stackList), stackList::matches);
     }
 
     public boolean requestFromStockNetworkByStackList(StackList stackList, IToken<?> requestId, Level level) {
-        return requestFromStockNetworkGeneric(stackList::matches, stackList.getCount(), requestId, level, "StackList");
+        return this.requestFromStockNetworkGeneric(this.candidatesFor(stackList), stackList::matches,
+                stackList.getCount(), requestId, level, "StackList");
     }
 
     public long getStockLevelForFood(Food food) {
-        return getStockLevelMatching(food::matches);
+        return this.getStockLevelMatching(this.getIndex().foodIds(), food::matches);
     }
 
     public boolean requestFromStockNetworkForFood(Food food, IToken<?> requestId, Level level) {
-        return requestFromStockNetworkGeneric(food::matches, food.getCount(), requestId, level, "Food");
+        return this.requestFromStockNetworkGeneric(this.getIndex().foodIds(), food::matches, food.getCount(),
+                requestId, level, "Food");
     }
 
     public long getStockLevelForBurnable(Burnable burnable) {
-        return getStockLevelMatching(FurnaceBlockEntity::isFuel);
+        return this.getStockLevelMatching(this.getIndex().fuelIds(), null);
     }
 
     public boolean requestFromStockNetworkForBurnable(Burnable burnable, IToken<?> requestId, Level level) {
-        return requestFromStockNetworkGeneric(FurnaceBlockEntity::isFuel, burnable.getCount(), requestId, level,
-                "Burnable");
+        return this.requestFromStockNetworkGeneric(this.getIndex().fuelIds(), null, burnable.getCount(), requestId,
+                level, "Burnable");
     }
 
+    /**
+     * Gets the stock of an exact item and NBT that is not yet reserved by a
+     * staging request.
+     */
     public long getStockLevel(ItemStack item) {
-        return this.stockLevels.getOrDefault(new ItemMatch.ItemStackKey(item), 0L);
+        ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.find(item);
+        return key != null ? this.getUncommittedStock(key.getId()) : 0L;
+    }
+
+    private long getUncommittedStock(int id) {
+        return this.reservations.getUncommitted(id, this.stockSnapshot.get(id));
     }
 
-    private long getStockLevelMatching(Predicate<ItemStack> matcher) {
-        if (this.stockLevels.isEmpty()) {
-            return 0L;
+    private StockIndex getIndex() {
+        this.stockIndex.ensureCurrent(this.stockSnapshot);
+        return this.stockIndex;
+    }
+
+    /**
+     * Candidate ids for a StackList are every known variant of the items it
+     * lists; the list's own matcher still decides on damage/NBT rules.
+     */
+    private IntArrayList candidatesFor(StackList stackList) {
+        IntArrayList ids = new IntArrayList(stackList.getStacks().size());
+        for (ItemStack listed : stackList.getStacks()) {
+            if (listed.isEmpty())
+                continue;
+            for (ItemMatch.ItemStackKey key : ItemMatch.ItemStackKey.variantsOf(listed.getItem())) {
+                if (!ids.contains(key.getId())) {
+                    ids.add(key.getId());
+                }
+            }
         }
+        return ids;
+    }
+
+    /**
+     * Sums the stock of the candidate items, optionally filtered by a matcher
+     * applied to the cached prototype stack.
+     */
+    private long getStockLevelMatching(IntArrayList candidates, @Nullable Predicate<ItemStack> matcher) {
         long total = 0L;
-        for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : this.stockLevels.entrySet()) {
-            ItemMatch.ItemStackKey key = entry.getKey();
-            long quantity = entry.getValue();
+        for (int i = 0; i < candidates.size(); ++i) {
+            int id = candidates.getInt(i);
+            long quantity = this.getUncommittedStock(id);
             if (quantity <= 0L)
                 continue;
-            ItemStack stack = key.toStack();
-            if (matcher.test(stack)) {
+            ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.byId(id);
+            if (key != null && (matcher == null || matcher.test(key.prototype()))) {
                 total += quantity;
             }
         }
         return total;
     }
 
-    private boolean requestFromStockNetworkGeneric(Predicate<ItemStack> matcher, int quantity, IToken<?> requestId,
-            Level level, String logLabel) {
-        if (this.stockLevels.isEmpty()) {
+    private boolean requestFromStockNetworkGeneric(IntArrayList candidates, @Nullable Predicate<ItemStack> matcher,
+            int quantity, IToken<?> requestId, Level level, String logLabel) {
+        if (this.stockSnapshot.isEmpty()) {
             LOGGER.warn("{} Cannot request from stock network - no stock data available", LogTags.ORDERING);
             return false;
         }
         int remaining = quantity;
         List<StagingRequest> stagingRequests = new ArrayList<>();
-        for (Map.Entry<ItemMatch.ItemStackKey, Long> entry : this.stockLevels.entrySet()) {
+        for (int i = 0; i < candidates.size(); ++i) {
             if (remaining <= 0)
                 break;
-            ItemMatch.ItemStackKey key = entry.getKey();
-            long available = entry.getValue();
+            int id = candidates.getInt(i);
+            long available = this.getUncommittedStock(id);
             if (available <= 0L)
                 continue;
-            ItemStack stack = key.toStack();
-            if (!matcher.test(stack))
+            ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.byId(id);
+            if (key == null)
+                continue;
+            ItemStack stack = key.prototype();
+            if (matcher != null && !matcher.test(stack))
                 continue;
             long reserveThreshold = this.stockGauges.getOrDefault(key, 0L);
             long availableAfterReserve = available - reserveThreshold;
             if (availableAfterReserve <= 0L)
                 continue;
             int toTake = (int) Math.min(remaining, Math.min(availableAfterReserve, Integer.MAX_VALUE));
-            stagingRequests.add(StagingRequest.create(stack, toTake, level.getGameTime(), requestId));
+            stagingRequests.add(StagingRequest.create(stack.copy(), toTake, level.getGameTime(), requestId));
             remaining -= toTake;
         }
         if (remaining > 0) {
@@ -476,7 +589,7 @@ public final class NetworkIntegration {
         for (StagingRequest staging : stagingRequests) {
             LOGGER.debug("{} {} request {} buffering sub-request for {} x{}", LogTags.ORDERING, logLabel, requestId,
                     staging.item.getDisplayName().getString(), staging.quantity);
-            this.bufferedRequests.put(requestId, staging);
+            this.bufferStaging(staging);
         }
         return true;
     }
@@ -485,48 +598,209 @@ public final class NetworkIntegration {
         return this.stockGauges;
     }
 
+    /**
+     * Version of the stock snapshot, bumped whenever a refresh changes any count.
+     */
+    public long getStockSnapshotVersion() {
+        return this.stockSnapshot.getVersion();
+    }
+
+    /**
+     * Counter bumped whenever the hut starts or stops reading a shared
+     * snapshot. Snapshot and ledger versions only compare within one.
+     */
+    public long getNetworkGeneration() {
+        return this.networkGeneration;
+    }
+
+    /**
+     * Version of the reservation ledger, bumped whenever a reservation is taken
+     * or released by any hut sharing it.
+     */
+    public long getReservationVersion() {
+        return this.reservations.getVersion();
+    }
+
+    /**
+     * Gets the frequency of the Stock Ticker's network as of the last snapshot
+     * refresh, or null if there has not been one.
+     */
+    @Nullable
+    public UUID getNetworkFrequency() {
+        return this.networkFrequency;
+    }
+
+    /**
+     * Stops reading the shared network snapshot and takes this hut's
+     * reservations out of its ledger. Called when the building is destroyed or
+     * its chunk unloads; the next snapshot refresh joins again.
+     */
+    public void detach() {
+        if (this.sharedStock == null) {
+            return;
+        }
+        this.moveReservations(new StockReservationLedger());
+        StockKeeperCoordinator.forColony(this.colony).leave(this, this.sharedStock);
+        this.sharedStock = null;
+        this.stockSnapshot = new StockSnapshot();
+        this.stockIndex = new StockIndex();
+        this.lastStockSnapshotTick = Long.MIN_VALUE;
+        ++this.networkGeneration;
+    }
+
+    /**
+     * Moves this hut's staging reservations out of the ledger it uses now and
+     * into another one, which it uses from then on.
+     */
+    private void moveReservations(StockReservationLedger target) {
+        if (target == this.reservations) {
+            return;
+        }
+        for (StagingRequest staging : this.pendingStagingRequests.values()) {
+            if (staging.reserved) {
+                this.reservations.release(staging);
+                target.reserve(staging);
+            }
+        }
+        for (StagingRequest staging : this.bufferedRequests.values()) {
+            if (staging.reserved) {
+                this.reservations.release(staging);
+                target.reserve(staging);
+            }
+        }
+        this.reservations = target;
+    }
+
     public int getPendingRequestCount() {
         return this.pendingStagingRequests.size();
     }
 
+    /**
+     * Whether any staging request is buffered or waiting to arrive.
+     */
+    public boolean hasStagingWork() {
+        return !this.pendingStagingRequests.isEmpty() || !this.bufferedRequests.isEmpty();
+    }
+
     public boolean hasPendingStagingRequest(IToken<?> requestId) {
-        return this.pendingStagingRequests.containsKey(requestId) || this.bufferedRequests.containsKey(requestId);
+        return this.pendingStagingRequests.containsParent(requestId)
+                || this.bufferedRequests.containsParent(requestId);
     }
 
+    /**
+     * Cancels every staging part of a parent request.
+     *
+     * @return true if anything was cancelled
+     */
     public boolean cancelStagingRequest(IToken<?> requestId) {
-        StagingRequest buffered = this.bufferedRequests.remove(requestId);
-        if (buffered != null) {
-            LOGGER.debug("{} Cancelled buffered staging request for parent request {}", LogTags.ORDERING, requestId);
-            return true;
+        return this.cancelAllStagingRequestsForParent(requestId) > 0;
+    }
+
+    // ==================== Persistence ====================
+
+    /**
+     * Saves in-flight staging requests so a restart picks them up instead of
+     * broadcasting them again. Bundle followers refer to their leader by its
+     * index in the saved pending list.
+     */
+    public CompoundTag serializeStaging() {
+        CompoundTag tag = new CompoundTag();
+        ListTag pending = new ListTag();
+        List<StagingRequest> saved = new ArrayList<>();
+        Map<StagingRequest, Integer> savedIndex = new IdentityHashMap<>();
+        for (StagingRequest staging : this.pendingStagingRequests.values()) {
+            CompoundTag entry = staging.toNBT();
+            if (entry != null) {
+                savedIndex.put(staging, pending.size());
+                pending.add(entry);
+                saved.add(staging);
+            }
         }
-        StagingRequest staging = this.pendingStagingRequests.remove(requestId);
-        if (staging != null) {
-            staging.state = StagingRequest.State.CANCELLED;
-            LOGGER.debug("{} Cancelled staging request for parent request {}", LogTags.ORDERING, requestId);
-            return true;
+        for (int i = 0; i < saved.size(); ++i) {
+            StagingRequest leader = saved.get(i).bundleLeader;
+            Integer leaderIndex = leader != null ? savedIndex.get(leader) : null;
+            if (leaderIndex != null) {
+                pending.getCompound(i).putInt(TAG_LEADER, leaderIndex);
+            }
         }
-        return false;
+        tag.put(TAG_PENDING, pending);
+        ListTag buffered = new ListTag();
+        for (StagingRequest staging : this.bufferedRequests.values()) {
+            CompoundTag entry = staging.toNBT();
+            if (entry != null) {
+                buffered.add(entry);
+            }
+        }
+        tag.put(TAG_BUFFERED, buffered);
+        return tag;
+    }
+
+    /**
+     * Restores staging requests saved by {@link #serializeStaging()}, including
+     * their stock reservations and timeouts.
+     */
+    public void deserializeStaging(CompoundTag tag) {
+        // A reload of a live building replaces the tracked requests instead of adding to them
+        this.clearStaging();
+        ListTag pending = tag.getList(TAG_PENDING, Tag.TAG_COMPOUND);
+        StagingRequest[] restored = new StagingRequest[pending.size()];
+        for (int i = 0; i < pending.size(); ++i) {
+            restored[i] = StagingRequest.fromNBT(pending.getCompound(i));
+        }
+        for (int i = 0; i < pending.size(); ++i) {
+            StagingRequest staging = restored[i];
+            if (staging == null || (staging.state != StagingRequest.State.QUEUED
+                    && staging.state != StagingRequest.State.BROADCASTED)) {
+                continue;
+            }
+            CompoundTag entry = pending.getCompound(i);
+            if (entry.contains(TAG_LEADER)) {
+                int leader = entry.getInt(TAG_LEADER);
+                // A follower whose leader was not saved is tracked on its own
+                staging.bundleLeader = leader >= 0 && leader < restored.length && restored[leader] != null
+                        ? restored[leader]
+                        : null;
+            }
+            if (staging.state == StagingRequest.State.QUEUED) {
+                // Broadcast items already left the network before the save
+                this.reservations.reserve(staging);
+            }
+            this.putPending(staging);
+        }
+        ListTag buffered = tag.getList(TAG_BUFFERED, Tag.TAG_COMPOUND);
+        for (int i = 0; i < buffered.size(); ++i) {
+            StagingRequest staging = StagingRequest.fromNBT(buffered.getCompound(i));
+            if (staging != null) {
+                this.bufferStaging(staging);
+            }
+        }
+        if (!this.pendingStagingRequests.isEmpty() || !this.bufferedRequests.isEmpty()) {
+            LOGGER.info("{} Restored {} pending and {} buffered staging requests", LogTags.DISPATCH,
+                    this.pendingStagingRequests.size(), this.bufferedRequests.size());
+        }
+    }
+
+    private void clearStaging() {
+        for (StagingRequest staging : this.pendingStagingRequests.values()) {
+            this.reservations.release(staging);
+        }
+        for (StagingRequest staging : this.bufferedRequests.values()) {
+            this.reservations.release(staging);
+        }
+        this.pendingStagingRequests.clear();
+        this.bufferedRequests.clear();
+        this.stagingTimeouts.clear();
     }
 
     public int cancelAllStagingRequestsForParent(IToken<?> parentRequestId) {
         int count = 0;
-        Iterator<Map.Entry<IToken<?>, StagingRequest>> bufferedIt = this.bufferedRequests.entrySet().iterator();
-        while (bufferedIt.hasNext()) {
-            Map.Entry<IToken<?>, StagingRequest> entry = bufferedIt.next();
-            StagingRequest staging = entry.getValue();
-            if (staging.parentRequestId == null || !staging.parentRequestId.equals(parentRequestId))
-                continue;
-            bufferedIt.remove();
+        for (StagingRequest staging : this.bufferedRequests.removeParent(parentRequestId)) {
+            this.reservations.release(staging);
             ++count;
         }
-        Iterator<Map.Entry<IToken<?>, StagingRequest>> it = this.pendingStagingRequests.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<IToken<?>, StagingRequest> entry = it.next();
-            StagingRequest staging = entry.getValue();
-            if (staging.parentRequestId == null || !staging.parentRequestId.equals(parentRequestId))
-                continue;
+        for (StagingRequest staging : this.pendingStagingRequests.removeParent(parentRequestId)) {
             staging.state = StagingRequest.State.CANCELLED;
-            it.remove();
+            this.reservations.release(staging);
             ++count;
         }
         if (count > 0) {
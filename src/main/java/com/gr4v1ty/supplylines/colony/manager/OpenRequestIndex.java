@@ -0,0 +1,175 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.gr4v1ty.supplylines.util.RequestTypes;
+import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
+import com.minecolonies.api.colony.requestsystem.request.IRequest;
+import com.minecolonies.api.colony.requestsystem.request.RequestState;
+import com.minecolonies.api.colony.requestsystem.requestable.IConcreteDeliverable;
+import com.minecolonies.api.colony.requestsystem.requestable.IDeliverable;
+import com.minecolonies.api.colony.requestsystem.requestable.IRequestable;
+import com.minecolonies.api.colony.requestsystem.requestable.RequestTag;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Open SupplyLines requests the building's resolvers have been asked about,
+ * indexed by what they want: concrete requests by item, tag requests by tag,
+ * and category requests (tools, food, fuel) by their match predicate. When
+ * racks or network stock change, only the requests that could take one of the
+ * changed items are re-evaluated.
+ * <p>
+ * Requests are added from the resolver callbacks and removed when they are
+ * resolved or cancelled. Requests another resolver took are dropped by
+ * {@link #prune(IRequestManager)}.
+ */
+public final class OpenRequestIndex {
+    private final Map<IToken<?>, IRequestable> requests = new HashMap<>();
+    private final Map<Item, Set<IToken<?>>> byItem = new HashMap<>();
+    private final Map<TagKey<Item>, Set<IToken<?>>> byTag = new HashMap<>();
+    private final Map<IToken<?>, IDeliverable> byPredicate = new HashMap<>();
+
+    /**
+     * Starts tracking a request. Does nothing if it is already tracked or is
+     * not a SupplyLines request type.
+     */
+    public void track(IRequest<?> request) {
+        IRequestable requestable = request.getRequest();
+        IToken<?> id = request.getId();
+        if (this.requests.containsKey(id) || !RequestTypes.isSupplyLinesType(requestable)) {
+            return;
+        }
+        this.requests.put(id, requestable);
+        if (requestable instanceof IConcreteDeliverable concrete) {
+            for (ItemStack stack : concrete.getRequestedItems()) {
+                this.byItem.computeIfAbsent(stack.getItem(), k -> new HashSet<>()).add(id);
+            }
+        } else if (requestable instanceof RequestTag tag) {
+            this.byTag.computeIfAbsent(tag.getTag(), k -> new HashSet<>()).add(id);
+        } else if (requestable instanceof IDeliverable deliverable) {
+            this.byPredicate.put(id, deliverable);
+        }
+    }
+
+    /**
+     * Stops tracking a request.
+     */
+    public void untrack(IToken<?> id) {
+        IRequestable requestable = this.requests.remove(id);
+        if (requestable == null) {
+            return;
+        }
+        if (requestable instanceof IConcreteDeliverable concrete) {
+            for (ItemStack stack : concrete.getRequestedItems()) {
+                removeFrom(this.byItem, stack.getItem(), id);
+            }
+        } else if (requestable instanceof RequestTag tag) {
+            removeFrom(this.byTag, tag.getTag(), id);
+        } else {
+            this.byPredicate.remove(id);
+        }
+    }
+
+    /**
+     * Gets the tracked requests that want any of the changed items.
+     *
+     * @param changed
+     *            items whose quantity changed in the racks or network
+     */
+    public Set<IToken<?>> affectedBy(Collection<ItemMatch.ItemStackKey> changed) {
+        Set<IToken<?>> affected = new HashSet<>();
+        if (changed.isEmpty() || this.requests.isEmpty()) {
+            return affected;
+        }
+        Set<Item> items = new HashSet<>();
+        for (ItemMatch.ItemStackKey key : changed) {
+            if (!items.add(key.getItem())) {
+                continue;
+            }
+            Set<IToken<?>> ids = this.byItem.get(key.getItem());
+            if (ids != null) {
+                affected.addAll(ids);
+            }
+        }
+        if (!this.byTag.isEmpty()) {
+            for (Item item : items) {
+                item.builtInRegistryHolder().tags().forEach(tag -> {
+                    Set<IToken<?>> ids = this.byTag.get(tag);
+                    if (ids != null) {
+                        affected.addAll(ids);
+                    }
+                });
+            }
+        }
+        for (Map.Entry<IToken<?>, IDeliverable> e : this.byPredicate.entrySet()) {
+            if (affected.contains(e.getKey())) {
+                continue;
+            }
+            for (ItemMatch.ItemStackKey key : changed) {
+                if (e.getValue().matches(key.prototype())) {
+                    affected.add(e.getKey());
+                    break;
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Drops requests that no longer exist or are no longer waiting on a
+     * resolver.
+     *
+     * @return number of requests dropped
+     */
+    public int prune(IRequestManager manager) {
+        int dropped = 0;
+        for (IToken<?> id : List.copyOf(this.requests.keySet())) {
+            if (!isOpen(manager, id)) {
+                this.untrack(id);
+                ++dropped;
+            }
+        }
+        return dropped;
+    }
+
+    public int size() {
+        return this.requests.size();
+    }
+
+    public void clear() {
+        this.requests.clear();
+        this.byItem.clear();
+        this.byTag.clear();
+        this.byPredicate.clear();
+    }
+
+    private static boolean isOpen(IRequestManager manager, IToken<?> id) {
+        IRequest<?> request;
+        try {
+            request = manager.getRequestForToken(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (request == null) {
+            return false;
+        }
+        RequestState state = request.getState();
+        return state == RequestState.CREATED || state == RequestState.ASSIGNING
+                || state == RequestState.IN_PROGRESS || state == RequestState.FOLLOWUP_IN_PROGRESS;
+    }
+
+    private static <K> void removeFrom(Map<K, Set<IToken<?>>> map, K key, IToken<?> id) {
+        Set<IToken<?>> ids = map.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            map.remove(key);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.rs.util.DeliveryPlanning;
+import com.gr4v1ty.supplylines.util.LogTags;
+import com.gr4v1ty.supplylines.util.inventory.RackIndex;
+import com.gr4v1ty.supplylines.util.inventory.SlotClaims;
+import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
+import com.minecolonies.api.colony.requestsystem.request.IRequest;
+import com.minecolonies.api.colony.requestsystem.request.RequestState;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocates rack stock across all open requests the building's resolvers have
+ * seen, in one pass per tick, so that no two requests are promised the same
+ * items. A request whose rack picks satisfy it claims them in the rack index's
+ * {@link SlotClaims}; the resolvers then read that allocation back instead of
+ * picking again. Claims stay pinned across passes for as long as the claimed
+ * slots still hold them, so a pass only picks for requests without a claim, in
+ * the order they were first seen. Requests that became satisfiable since the
+ * last pass (e.g. because staged items arrived) are re-evaluated together in
+ * the same tick.
+ * <p>
+ * Network stock is not allocated here: staging reserves it synchronously in
+ * {@link StockReservationLedger} the moment a request is accepted.
+ */
+public final class RequestBatchPlanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestBatchPlanner.class);
+
+    private final Map<IToken<?>, Tracked> tracked = new LinkedHashMap<>();
+    private final RackIndex index;
+    private long plannedIndexVersion = Long.MIN_VALUE;
+    private boolean dirty;
+
+    public RequestBatchPlanner(RackIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Gets the rack picks for a request: its allocation from the last pass if it
+     * has one, otherwise a fresh pick from what is still unclaimed. A fresh pick
+     * that satisfies the request is claimed straight away. The request is
+     * tracked from then on.
+     *
+     * @param request
+     *            the request being resolved
+     * @param picker
+     *            the resolver's rack picker
+     * @param satisfies
+     *            whether a pick list covers the request
+     */
+    public <R extends IRequest<?>> List<DeliveryPlanning.Pick> picksFor(R request,
+            Function<R, List<DeliveryPlanning.Pick>> picker, BiPredicate<List<DeliveryPlanning.Pick>, R> satisfies) {
+        IToken<?> id = request.getId();
+        Tracked tr = this.tracked.get(id);
+        if (tr == null) {
+            tr = new Tracked(picker, satisfies);
+            this.tracked.put(id, tr);
+        }
+        SlotClaims claims = this.index.getClaims();
+        List<DeliveryPlanning.Pick> claimed = claims.get(id);
+        if (claimed != null) {
+            return claimed;
+        }
+        List<DeliveryPlanning.Pick> picks = picker.apply(request);
+        tr.satisfied = satisfies.test(picks, request);
+        if (tr.satisfied) {
+            claims.claim(id, picks);
+        }
+        return picks;
+    }
+
+    /**
+     * Stops tracking a request and frees its claim. Called once its deliveries
+     * are created or it is cancelled.
+     */
+    public void release(IToken<?> id) {
+        this.index.getClaims().release(id);
+        if (this.tracked.remove(id) != null) {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Forces a new pass on the next tick, e.g. after claimed stock was freed.
+     */
+    public void invalidate() {
+        this.dirty = true;
+    }
+
+    public boolean isEmpty() {
+        return this.tracked.isEmpty();
+    }
+
+    /**
+     * Re-plans if a request was released or the rack index changed since the
+     * last pass.
+     */
+    public void planIfDue(IRequestManager manager) {
+        if (this.tracked.isEmpty()) {
+            return;
+        }
+        if (!this.dirty && !this.index.isStale() && this.index.getVersion() == this.plannedIndexVersion) {
+            return;
+        }
+        this.plan(manager);
+    }
+
+    private void plan(IRequestManager manager) {
+        this.dirty = false;
+        SlotClaims claims = this.index.getClaims();
+        Level level = manager.getColony().getWorld();
+        // Drop claims whose slots were emptied or swapped, before anyone picks
+        for (IToken<?> id : this.tracked.keySet()) {
+            if (claims.get(id) != null && !claims.isIntact(id, level, this.index.getHandlers())) {
+                claims.release(id);
+            }
+        }
+        List<IToken<?>> toReassign = new ArrayList<>();
+        Set<IToken<?>> toUpdate = new HashSet<>();
+        int allocated = 0;
+        Iterator<Map.Entry<IToken<?>, Tracked>> it = this.tracked.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<IToken<?>, Tracked> e = it.next();
+            IRequest<?> request = getOpenRequest(manager, e.getKey());
+            if (request == null) {
+                claims.release(e.getKey());
+                it.remove();
+                continue;
+            }
+            Tracked tr = e.getValue();
+            if (claims.get(e.getKey()) != null) {
+                ++allocated;
+                tr.satisfied = true;
+                continue;
+            }
+            List<DeliveryPlanning.Pick> picks = tr.picker.apply(request);
+            boolean satisfied = tr.satisfies.test(picks, request);
+            if (satisfied) {
+                claims.claim(e.getKey(), picks);
+                ++allocated;
+                if (!tr.satisfied) {
+                    if (request.getState() == RequestState.IN_PROGRESS) {
+                        toReassign.add(e.getKey());
+                    } else {
+                        toUpdate.add(e.getKey());
+                    }
+                }
+            }
+            tr.satisfied = satisfied;
+        }
+        this.plannedIndexVersion = this.index.getVersion();
+        LOGGER.debug("{} Batch plan: {} requests, {} holding rack claims, {} newly satisfied", LogTags.ORDERING,
+                this.tracked.size(), allocated, toReassign.size() + toUpdate.size());
+
+        for (IToken<?> id : toReassign) {
+            ColonyUpdateDispatcher.reassign(manager.getColony(), id);
+        }
+        if (!toUpdate.isEmpty()) {
+            ColonyUpdateDispatcher.submit(manager.getColony(), req -> toUpdate.contains(req.getId()));
+        }
+    }
+
+    @Nullable
+    private static IRequest<?> getOpenRequest(IRequestManager manager, IToken<?> id) {
+        IRequest<?> request;
+        try {
+            request = manager.getRequestForToken(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (request == null || request.hasChildren()) {
+            return null;
+        }
+        RequestState state = request.getState();
+        return state == RequestState.ASSIGNING || state == RequestState.IN_PROGRESS ? request : null;
+    }
+
+    private static final class Tracked {
+        private final Function<IRequest<?>, List<DeliveryPlanning.Pick>> picker;
+        private final BiPredicate<List<DeliveryPlanning.Pick>, IRequest<?>> satisfies;
+        private boolean satisfied;
+
+        @SuppressWarnings("unchecked")
+        private <R extends IRequest<?>> Tracked(Function<R, List<DeliveryPlanning.Pick>> picker,
+                BiPredicate<List<DeliveryPlanning.Pick>, R> satisfies) {
+            // Each tracked request is only ever handed back to its own resolver's picker
+            this.picker = (Function<IRequest<?>, List<DeliveryPlanning.Pick>>) (Function<?, ?>) picker;
+            this.satisfies = (BiPredicate<List<DeliveryPlanning.Pick>, IRequest<?>>) (BiPredicate<?, ?>) satisfies;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import com.gr4v1ty.supplylines.rs.resolver.ToolResolver;
 import com.gr4v1ty.supplylines.rs.util.DeliveryPlanning;
 import com.gr4v1ty.supplylines.util.LogTags;
 import com.gr4v1ty.supplylines.util.RequestTypes;
+import com.gr4v1ty.supplylines.util.inventory.RackIndex;
 import com.gr4v1ty.supplylines.util.inventory.RackPicker;
 import com.minecolonies.api.colony.IColony;
 import com.minecolonies.api.colony.requestsystem.location.ILocation;
@@ -31,6 +32,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,7 +79,7 @@ public final class RequestHandler {
      * Ensures the provider is registered with MineColonies' request system. Uses a
      * static set to track registrations this session for fast-path return.
      */
-    public void ensureRSRegistered(Level level, List<BlockPos> rackPositions, BuildingStockKeeper stockKeeperBuilding) {
+    public void ensureRSRegistered(Level level, RackIndex rackIndex, BuildingStockKeeper stockKeeperBuilding) {
         if (level == null || level.isClientSide()) {
             return;
         }
@@ -91,7 +93,7 @@ public final class RequestHandler {
         IntakeLocation anchor = new IntakeLocation(this.colony.getDimension(), this.buildingPosition);
 
         // Register components in static registry before creating resolvers
-        registerComponents(level, rackPositions);
+        registerComponents(level, rackIndex);
 
         // Create resolvers (they look up components from the static registry)
         List<IRequestResolver<?>> resolvers = List.of(new StackResolver(this.skStackId, anchor),
@@ -114,7 +116,7 @@ public final class RequestHandler {
     /**
      * Registers components for all resolver types in the static registry.
      */
-    private void registerComponents(Level level, List<BlockPos> rackPositions) {
+    private void registerComponents(Level level, RackIndex rackIndex) {
         Predicate<IRequester> filter = r -> true;
         Function<IRequester, ILocation> locator = requester -> {
             ILocation loc = requester.getLocation();
@@ -129,37 +131,37 @@ public final class RequestHandler {
 
         ResolverComponents.register(this.skStackId,
                 new ResolverComponents<>(filter, priority, locator,
-                        makePicker(level, rackPositions, RackPicker::pickFromRacks),
+                        makePicker(level, rackIndex, RackPicker::pickFromRacks),
                         (mgr, dest, req) -> com.gr4v1ty.supplylines.util.inventory.DeliveryVerifier
                                 .verifyDelivery(level, dest, req.getRequest())));
 
         ResolverComponents.register(this.skToolId,
                 new ResolverComponents<>(filter, priority, locator,
-                        makePicker(level, rackPositions, RackPicker::pickToolFromRacks),
+                        makePicker(level, rackIndex, RackPicker::pickToolFromRacks),
                         (mgr, dest, req) -> com.gr4v1ty.supplylines.util.inventory.DeliveryVerifier
                                 .verifyToolDelivery(level, dest, req.getRequest())));
 
         ResolverComponents.register(this.skTagId,
                 new ResolverComponents<>(filter, priority, locator,
-                        makePicker(level, rackPositions, RackPicker::pickFromRacksByTag),
+                        makePicker(level, rackIndex, RackPicker::pickFromRacksByTag),
                         (mgr, dest, req) -> com.gr4v1ty.supplylines.util.inventory.DeliveryVerifier
                                 .verifyTagDelivery(level, dest, req.getRequest())));
 
         ResolverComponents.register(this.skStackListId,
                 new ResolverComponents<>(filter, priority, locator,
-                        makePicker(level, rackPositions, RackPicker::pickFromRacksByStackList),
+                        makePicker(level, rackIndex, RackPicker::pickFromRacksByStackList),
                         (mgr, dest, req) -> com.gr4v1ty.supplylines.util.inventory.DeliveryVerifier
                                 .verifyStackListDelivery(level, dest, req.getRequest())));
 
         ResolverComponents.register(this.skFoodId,
                 new ResolverComponents<>(filter, priority, locator,
-                        makePicker(level, rackPositions, RackPicker::pickFoodFromRacks),
+                        makePicker(level, rackIndex, RackPicker::pickFoodFromRacks),
                         (mgr, dest, req) -> com.gr4v1ty.supplylines.util.inventory.DeliveryVerifier
                                 .verifyFoodDelivery(level, dest, req.getRequest())));
 
         ResolverComponents.register(this.skBurnableId,
                 new ResolverComponents<>(filter, priority, locator,
-                        makePicker(level, rackPositions, RackPicker::pickBurnableFromRacks),
+                        makePicker(level, rackIndex, RackPicker::pickBurnableFromRacks),
                         (mgr, dest, req) -> com.gr4v1ty.supplylines.util.inventory.DeliveryVerifier
                                 .verifyBurnableDelivery(level, dest, req.getRequest())));
     }
@@ -189,34 +191,30 @@ public final class RequestHandler {
     }
 
     public void triggerReassignment() {
-        try {
-            this.colony.getRequestManager().onColonyUpdate(req -> {
-                boolean isOurType = RequestTypes.isSupplyLinesType(req.getRequest());
-                boolean hasChildren = req.hasChildren();
-                RequestState state = req.getState();
-
-                boolean result;
-                if (isOurType && hasChildren) {
-                    result = false; // Has active deliveries
-                } else if (isOurType && state == RequestState.FOLLOWUP_IN_PROGRESS) {
-                    result = false; // Waiting for deliveries to complete
-                } else if (isOurType && state == RequestState.IN_PROGRESS) {
-                    result = true; // Re-evaluate IN_PROGRESS requests
-                } else if (isOurType && state == RequestState.ASSIGNING) {
-                    result = true; // Looking for a resolver, we can help
-                } else {
-                    result = false; // Not our type or not relevant state
-                }
-
-                if (isOurType && result) {
-                    LOGGER.debug("{} triggerReassignment: notifying request id={}, type={}, state={}", LogTags.ORDERING,
-                            req.getId(), req.getRequest().getClass().getSimpleName(), state);
-                }
-                return result;
-            });
-        } catch (RuntimeException e) {
-            LOGGER.error("{} triggerReassignment: onColonyUpdate threw", LogTags.ORDERING, e);
-        }
+        ColonyUpdateDispatcher.submit(this.colony, req -> {
+            boolean isOurType = RequestTypes.isSupplyLinesType(req.getRequest());
+            boolean hasChildren = req.hasChildren();
+            RequestState state = req.getState();
+
+            boolean result;
+            if (isOurType && hasChildren) {
+                result = false; // Has active deliveries
+            } else if (isOurType && state == RequestState.FOLLOWUP_IN_PROGRESS) {
+                result = false; // Waiting for deliveries to complete
+            } else if (isOurType && state == RequestState.IN_PROGRESS) {
+                result = true; // Re-evaluate IN_PROGRESS requests
+            } else if (isOurType && state == RequestState.ASSIGNING) {
+                result = true; // Looking for a resolver, we can help
+            } else {
+                result = false; // Not our type or not relevant state
+            }
+
+            if (isOurType && result) {
+                LOGGER.debug("{} triggerReassignment: notifying request id={}, type={}, state={}", LogTags.ORDERING,
+                        req.getId(), req.getRequest().getClass().getSimpleName(), state);
+            }
+            return result;
+        });
     }
 
     /**
@@ -224,12 +222,20 @@ public final class RequestHandler {
      */
     @FunctionalInterface
     private interface PickerFunction<T extends IRequestable> {
-        List<DeliveryPlanning.Pick> pick(Level level, IColony colony, List<BlockPos> positions, T request);
+        List<DeliveryPlanning.Pick> pick(Level level, IColony colony, RackIndex index, @Nullable BlockPos origin,
+                T request);
     }
 
     private <T extends IRequestable> Function<IRequest<? extends T>, List<DeliveryPlanning.Pick>> makePicker(
-            Level level, List<BlockPos> rackPositions, PickerFunction<T> pickMethod) {
-        return parent -> pickMethod.pick(level, this.colony, rackPositions, parent.getRequest());
+            Level level, RackIndex rackIndex, PickerFunction<T> pickMethod) {
+        return parent -> pickMethod.pick(level, this.colony, rackIndex, requesterPos(parent),
+                parent.getRequest());
+    }
+
+    @Nullable
+    private static BlockPos requesterPos(IRequest<?> request) {
+        ILocation loc = request.getRequester().getLocation();
+        return loc != null ? loc.getInDimensionLocation() : null;
     }
 
     public UUID getProviderId() {
@@ -4,13 +4,15 @@ import com.gr4v1ty.supplylines.colony.buildings.modules.RestockPolicyModule;
 import com.gr4v1ty.supplylines.colony.buildings.modules.RestockPolicyModule.PolicyEntry;
 import com.gr4v1ty.supplylines.colony.buildings.modules.SuppliersModule;
 import com.gr4v1ty.supplylines.colony.buildings.modules.SuppliersModule.SupplierEntry;
+import com.gr4v1ty.supplylines.compat.create.BroadcastCircuitBreaker;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
 import com.gr4v1ty.supplylines.config.ModConfig;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
 import com.gr4v1ty.supplylines.util.ItemMatch;
 import com.gr4v1ty.supplylines.util.LogTags;
 import com.minecolonies.api.colony.IColony;
 import com.minecolonies.api.util.MessageUtils;
 import com.simibubi.create.content.logistics.BigItemStack;
-import com.simibubi.create.content.logistics.packager.InventorySummary;
 import com.simibubi.create.content.logistics.packagerLink.LogisticallyLinkedBehaviour;
 import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
 import com.simibubi.create.content.logistics.stockTicker.PackageOrderWithCrafts;
@@ -39,7 +41,6 @@ import java.util.stream.Collectors;
 public final class RestockManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(RestockManager.class);
 
-    @SuppressWarnings("unused")
     private final IColony colony;
     private long lastRestockCheckTick = Long.MIN_VALUE;
 
@@ -61,6 +62,10 @@ public final class RestockManager {
     /** Items that have pending orders - prevents duplicate orders */
     private final Set<ItemMatch.ItemStackKey> pendingOrderItems = new HashSet<>();
 
+    /** Local network orders are placed into; keys this hut's order claims */
+    @Nullable
+    private UUID orderNetwork;
+
     /**
      * Represents an in-flight restock order for display purposes.
      */
@@ -179,6 +184,10 @@ public final class RestockManager {
      */
     public void onOrderCleared(ItemMatch.ItemStackKey itemKey) {
         pendingOrderItems.remove(itemKey);
+        if (orderNetwork != null) {
+            StockKeeperCoordinator.forColony(colony)
+                    .release(new StockKeeperCoordinator.OrderKey(orderNetwork, itemKey), this);
+        }
     }
 
     /**
@@ -209,6 +218,7 @@ public final class RestockManager {
             return;
         }
         lastRestockCheckTick = now;
+        orderNetwork = localNetwork.getNetworkFrequency();
 
         // Get policies and suppliers
         List<PolicyEntry> policies = policyModule.getPolicies();
@@ -244,61 +254,75 @@ public final class RestockManager {
      *            The quantity needed
      * @param suppliers
      *            List of suppliers sorted by priority
+     * @param supplierCounts
+     *            Item count tables of the suppliers, in the same order
      * @return SupplierResult if found, null otherwise
      */
     @Nullable
-    private SupplierResult findSupplierWithStock(ItemStack item, int requiredQuantity, List<SupplierEntry> suppliers) {
+    private SupplierResult findSupplierWithStock(ItemStack item, int requiredQuantity, List<SupplierEntry> suppliers,
+            SupplierCounts supplierCounts) {
 
-        ItemMatch.ItemStackKey itemKey = new ItemMatch.ItemStackKey(item);
+        ItemMatch.ItemStackKey itemKey = ItemMatch.ItemStackKey.find(item);
+        if (itemKey == null) {
+            // Never seen in any network summary
+            return null;
+        }
+        int itemId = itemKey.getId();
 
         // Suppliers are already sorted by priority (0 = highest)
-        for (SupplierEntry supplier : suppliers) {
-            try {
-                InventorySummary summary = LogisticsManager.getSummaryOfNetwork(supplier.getNetworkId(), false);
-
-                if (summary == null || summary.isEmpty()) {
-                    continue;
-                }
+        int i = supplierCounts.nextWithStock(itemId, 0);
+        for (; i >= 0; i = supplierCounts.nextWithStock(itemId, i + 1)) {
+            SupplierEntry supplier = suppliers.get(i);
+            // Supplier has the item - check if it has a valid address
+            if (!supplier.hasValidAddress()) {
+                // Warn colony players about missing address
+                String label = supplier.getLabel().isEmpty()
+                        ? supplier.getNetworkId().toString().substring(0, 8)
+                        : supplier.getLabel();
+                MessageUtils.format("com.supplylines.restock.noaddress", item.getDisplayName().getString(), label)
+                        .sendTo(colony.getImportantMessageEntityPlayers());
+                LOGGER.debug("{} Supplier {} has {} but no delivery address configured", LogTags.ORDERING,
+                        supplier.getNetworkId(), item.getDisplayName().getString());
+                continue;
+            }
 
-                // Count matching items in supplier's network
-                long available = 0;
-                for (BigItemStack bigStack : summary.getStacks()) {
-                    if (bigStack == null || bigStack.stack == null) {
-                        continue;
-                    }
-                    ItemMatch.ItemStackKey stackKey = new ItemMatch.ItemStackKey(bigStack.stack);
-                    if (stackKey.equals(itemKey)) {
-                        available += bigStack.count;
-                    }
-                }
+            long available = supplierCounts.get(i, itemId);
+            int quantity = available >= requiredQuantity
+                    ? requiredQuantity
+                    : (int) Math.min(available, Integer.MAX_VALUE);
+            return new SupplierResult(supplier, quantity);
+        }
 
-                if (available > 0) {
-                    // Supplier has the item - check if it has a valid address
-                    if (!supplier.hasValidAddress()) {
-                        // Warn colony players about missing address
-                        String label = supplier.getLabel().isEmpty()
-                                ? supplier.getNetworkId().toString().substring(0, 8)
-                                : supplier.getLabel();
-                        MessageUtils
-                                .format("com.supplylines.restock.noaddress", item.getDisplayName().getString(), label)
-                                .sendTo(colony.getImportantMessageEntityPlayers());
-                        LOGGER.debug("{} Supplier {} has {} but no delivery address configured", LogTags.ORDERING,
-                                supplier.getNetworkId(), item.getDisplayName().getString());
-                        continue;
-                    }
+        return null;
+    }
 
-                    int quantity = available >= requiredQuantity
-                            ? requiredQuantity
-                            : (int) Math.min(available, Integer.MAX_VALUE);
-                    return new SupplierResult(supplier, quantity);
+    /**
+     * Resolves each supplier's item count table once so every policy in an
+     * evaluation is answered with one lookup per supplier.
+     *
+     * @param suppliers
+     *            List of suppliers sorted by priority
+     * @return Count tables per supplier, without empty or unavailable networks
+     *         and networks backing off after failed broadcasts
+     */
+    private SupplierCounts resolveSupplierCounts(List<SupplierEntry> suppliers) {
+        ItemCountTable[] counts = new ItemCountTable[suppliers.size()];
+        for (int i = 0; i < suppliers.size(); ++i) {
+            SupplierEntry supplier = suppliers.get(i);
+            if (!BroadcastCircuitBreaker.canAttempt(supplier.getNetworkId())) {
+                continue;
+            }
+            try {
+                NetworkSummaryCache.CachedSummary summary = NetworkSummaryCache.get(supplier.getNetworkId());
+                if (!summary.isEmpty()) {
+                    counts[i] = summary.getCounts();
                 }
             } catch (Exception e) {
                 LOGGER.warn("{} Failed to query supplier network {}: {}", LogTags.ORDERING, supplier.getNetworkId(),
                         e.getMessage());
             }
         }
-
-        return null;
+        return new SupplierCounts(counts);
     }
 
     /**
@@ -320,6 +344,9 @@ public final class RestockManager {
 
         List<PendingRestockRequest> pendingRequests = new ArrayList<>();
 
+        // Supplier tables are resolved lazily, once per evaluation
+        SupplierCounts supplierCounts = null;
+
         for (PolicyEntry policy : policies) {
             ItemStack policyItem = policy.getItem().getItemStack();
             int targetQuantity = policy.getTargetQuantity();
@@ -335,15 +362,24 @@ public final class RestockManager {
             }
 
             // Skip if we already have an active order for this item
-            ItemMatch.ItemStackKey itemKey = new ItemMatch.ItemStackKey(policyItem);
+            ItemMatch.ItemStackKey itemKey = ItemMatch.ItemStackKey.of(policyItem);
             if (pendingOrderItems.contains(itemKey)) {
                 LOGGER.debug("{} Skipping {} - order already in flight", LogTags.ORDERING,
                         policyItem.getDisplayName().getString());
                 continue;
             }
+            if (orderNetwork != null && StockKeeperCoordinator.forColony(colony)
+                    .isClaimedByOther(new StockKeeperCoordinator.OrderKey(orderNetwork, itemKey), this, now)) {
+                LOGGER.debug("{} Skipping {} - another Stock Keeper on this network already ordered it",
+                        LogTags.ORDERING, policyItem.getDisplayName().getString());
+                continue;
+            }
 
             // Find supplier with sufficient stock
-            SupplierResult result = findSupplierWithStock(policyItem, deficit, suppliers);
+            if (supplierCounts == null) {
+                supplierCounts = resolveSupplierCounts(suppliers);
+            }
+            SupplierResult result = findSupplierWithStock(policyItem, deficit, suppliers, supplierCounts);
             if (result == null) {
                 LOGGER.debug("{} No supplier found with {} x{}", LogTags.ORDERING,
                         policyItem.getDisplayName().getString(), deficit);
@@ -373,6 +409,10 @@ public final class RestockManager {
         }
 
         SupplierEntry supplier = requests.get(0).supplier;
+        if (!BroadcastCircuitBreaker.beginAttempt(supplier.getNetworkId())) {
+            // Another caller is probing the network; re-evaluated next cycle
+            return;
+        }
 
         try {
             // Build combined item list
@@ -386,12 +426,18 @@ public final class RestockManager {
 
             boolean success = LogisticsManager.broadcastPackageRequest(supplier.getNetworkId(),
                     LogisticallyLinkedBehaviour.RequestType.RESTOCK, order, null, destinationAddress);
+            BroadcastCircuitBreaker.recordResult(supplier.getNetworkId(), success);
 
             if (success) {
                 // Fire events for each order (DisplayBoardManager tracks them)
+                long claimExpiry = now + getDefaultDeliveryTicks() + ModConfig.SERVER.orderExpiryBufferTicks.get();
                 for (PendingRestockRequest req : requests) {
-                    ItemMatch.ItemStackKey itemKey = new ItemMatch.ItemStackKey(req.item);
+                    ItemMatch.ItemStackKey itemKey = ItemMatch.ItemStackKey.of(req.item);
                     pendingOrderItems.add(itemKey);
+                    if (orderNetwork != null) {
+                        StockKeeperCoordinator.forColony(colony).claim(
+                                new StockKeeperCoordinator.OrderKey(orderNetwork, itemKey), this, now, claimExpiry);
+                    }
 
                     RestockOrder newOrder = new RestockOrder(req.item, req.quantity, now, getDefaultDeliveryTicks(),
                             supplier.getNetworkId());
@@ -417,6 +463,7 @@ public final class RestockManager {
             }
         } catch (Exception e) {
             LOGGER.error("{} Exception broadcasting batched restock request", LogTags.DISPATCH, e);
+            BroadcastCircuitBreaker.recordResult(supplier.getNetworkId(), false);
         }
     }
 
@@ -435,6 +482,9 @@ public final class RestockManager {
      */
     @SuppressWarnings("unused")
     private boolean requestFromSupplier(Level level, SupplierEntry supplier, ItemStack item, int quantity) {
+        if (!BroadcastCircuitBreaker.beginAttempt(supplier.getNetworkId())) {
+            return false;
+        }
 
         try {
             List<BigItemStack> orderedStacks = new ArrayList<>();
@@ -448,6 +498,7 @@ public final class RestockManager {
             boolean success = LogisticsManager.broadcastPackageRequest(supplier.getNetworkId(),
                     LogisticallyLinkedBehaviour.RequestType.RESTOCK, order, null, // No source filter
                     destinationAddress);
+            BroadcastCircuitBreaker.recordResult(supplier.getNetworkId(), success);
 
             if (!success) {
                 LOGGER.warn("{} Failed to broadcast restock request to network {} (address: {})", LogTags.DISPATCH,
@@ -457,6 +508,7 @@ public final class RestockManager {
             return success;
         } catch (Exception e) {
             LOGGER.error("{} Exception broadcasting restock request", LogTags.DISPATCH, e);
+            BroadcastCircuitBreaker.recordResult(supplier.getNetworkId(), false);
             return false;
         }
     }
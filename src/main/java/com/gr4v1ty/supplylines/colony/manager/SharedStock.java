@@ -0,0 +1,122 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.compat.create.LogisticsChangeTracker;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
+import com.gr4v1ty.supplylines.config.ModConfig;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import com.gr4v1ty.supplylines.util.LogTags;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stock snapshot of one Create network frequency, shared by every Stock Keeper
+ * in a colony whose Stock Ticker is on it. The first hut due for a refresh
+ * rebuilds it and the others read the result. Stock increases are queued per
+ * hut, so every hut still sees every arrival whichever hut rebuilt. Staging
+ * reservations of all these huts go into one ledger, so two huts never commit
+ * the same network stock.
+ */
+final class SharedStock {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedStock.class);
+
+    private final UUID freqId;
+    private final StockSnapshot snapshot = new StockSnapshot();
+    private final StockIndex index = new StockIndex();
+    private final StockReservationLedger reservations = new StockReservationLedger();
+    private final Map<NetworkIntegration, ItemCountTable> pendingIncreases = new IdentityHashMap<>();
+    private long lastRebuildTick = Long.MIN_VALUE;
+    private long lastChangeEpoch = Long.MIN_VALUE;
+    private boolean followUpPending;
+
+    SharedStock(UUID freqId) {
+        this.freqId = freqId;
+    }
+
+    StockSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    StockIndex getIndex() {
+        return this.index;
+    }
+
+    StockReservationLedger getReservations() {
+        return this.reservations;
+    }
+
+    void subscribe(NetworkIntegration hut) {
+        this.pendingIncreases.computeIfAbsent(hut, k -> new ItemCountTable());
+    }
+
+    void unsubscribe(NetworkIntegration hut) {
+        this.pendingIncreases.remove(hut);
+    }
+
+    boolean hasSubscribers() {
+        return !this.pendingIncreases.isEmpty();
+    }
+
+    /**
+     * Rebuilds the snapshot from the network summary, unless it was already
+     * rebuilt this tick or, with change-driven snapshots, nothing on the
+     * network changed since the last rebuild.
+     */
+    void refreshIfDue(long now, boolean hasSpeculativeSuppliers) {
+        if (this.lastRebuildTick == now) {
+            return;
+        }
+        long changeEpoch = LogisticsChangeTracker.getEpoch(this.freqId);
+        if (ModConfig.SERVER.changeDrivenSnapshots.get() && changeEpoch == this.lastChangeEpoch
+                && !this.followUpPending
+                && now - this.lastRebuildTick < ModConfig.SERVER.snapshotSafetyTimeoutTicks.get()) {
+            return;
+        }
+        // Rebuild once more after a change so Create's own summary cache has settled
+        this.followUpPending = changeEpoch != this.lastChangeEpoch;
+        this.lastChangeEpoch = changeEpoch;
+        this.lastRebuildTick = now;
+        NetworkSummaryCache.CachedSummary summary = NetworkSummaryCache.get(this.freqId);
+        ItemCountTable newStockLevels = this.snapshot.beginUpdate();
+        if (!summary.isEmpty()) {
+            ItemCountTable counts = summary.getCounts();
+            for (int slot = 0; slot < counts.slotCount(); ++slot) {
+                if (!counts.isUsed(slot))
+                    continue;
+                newStockLevels.put(counts.keyAt(slot), counts.valueAt(slot));
+            }
+        } else if (!hasSpeculativeSuppliers) {
+            LOGGER.warn(
+                    "{} Network summary is empty and no speculative suppliers configured - Stock Keeper has no item sources",
+                    LogTags.INVENTORY);
+        }
+
+        // Swap buffers; increases (for arrival detection) are collected in the same pass
+        this.snapshot.commit();
+        this.index.ensureCurrent(this.snapshot);
+        if (summary.isOnline()) {
+            this.reservations.onSnapshotTaken(summary.getFetchNumber());
+        }
+        ItemCountTable increases = this.snapshot.getIncreases();
+        if (increases.isEmpty()) {
+            return;
+        }
+        for (ItemCountTable pending : this.pendingIncreases.values()) {
+            for (int slot = 0; slot < increases.slotCount(); ++slot) {
+                if (!increases.isUsed(slot))
+                    continue;
+                pending.addTo(increases.keyAt(slot), increases.valueAt(slot));
+            }
+        }
+    }
+
+    /**
+     * Gets the increases queued for a hut since it last cleared them. The
+     * caller clears the table once it has handled them.
+     */
+    ItemCountTable getPendingIncreases(NetworkIntegration hut) {
+        return this.pendingIncreases.computeIfAbsent(hut, k -> new ItemCountTable());
+    }
+}
@@ -2,8 +2,9 @@ package com.gr4v1ty.supplylines.colony.manager;
 
 import com.gr4v1ty.supplylines.colony.buildings.modules.SuppliersModule;
 import com.gr4v1ty.supplylines.colony.buildings.modules.SuppliersModule.SupplierEntry;
+import com.gr4v1ty.supplylines.compat.create.BroadcastCircuitBreaker;
+import com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache;
 import com.gr4v1ty.supplylines.config.ModConfig;
-import com.gr4v1ty.supplylines.util.ItemMatch;
 import com.gr4v1ty.supplylines.util.LogTags;
 import com.gr4v1ty.supplylines.util.ResearchEffects;
 import com.minecolonies.api.colony.IColony;
@@ -18,7 +19,6 @@ import com.minecolonies.api.colony.requestsystem.requestable.RequestTag;
 import com.minecolonies.api.colony.requestsystem.requestable.Tool;
 import com.minecolonies.api.colony.requestsystem.token.IToken;
 import com.simibubi.create.content.logistics.BigItemStack;
-import com.simibubi.create.content.logistics.packager.InventorySummary;
 import com.simibubi.create.content.logistics.packagerLink.LogisticallyLinkedBehaviour;
 import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
 import com.simibubi.create.content.logistics.stockTicker.PackageOrderWithCrafts;
@@ -321,54 +321,62 @@ public final class SpeculativeOrderManager {
             return;
         }
 
-        // Phase 1: Scan colony for unfulfilled requests
-        scanForUnfulfilledRequests(now);
+        // Phase 1: Scan colony for unfulfilled requests, in the tick's shared colony walk
+        scanForUnfulfilledRequests(now, () -> {
+            // Phase 2: Process requests that have waited long enough
+            processDelayedRequests(level, suppliersModule, localNetwork, now);
 
-        // Phase 2: Process requests that have waited long enough
-        processDelayedRequests(level, suppliersModule, localNetwork, now);
-
-        // Phase 3: Clean up completed/cancelled requests
-        cleanupCompletedRequests();
+            // Phase 3: Clean up completed/cancelled requests
+            cleanupCompletedRequests();
+        });
     }
 
     /**
      * Scans the colony's request system for unfulfilled requests that SupplyLines
      * handles but cannot currently fulfill.
+     *
+     * @param afterScan
+     *            run once the scan has visited every request
      */
-    private void scanForUnfulfilledRequests(long now) {
-        try {
-            colony.getRequestManager().onColonyUpdate(request -> {
-                // Track requests that are either:
-                // - ASSIGNING: Looking for a resolver (no one can fulfill yet)
-                // - IN_PROGRESS: Assigned to our resolver but items not yet available
-                RequestState state = request.getState();
-                if (state != RequestState.ASSIGNING && state != RequestState.IN_PROGRESS) {
-                    // Request is fulfilled, cancelled, or in followup state
-                    trackedRequests.remove(request.getId());
-                    return false;
-                }
+    private void scanForUnfulfilledRequests(long now, Runnable afterScan) {
+        ColonyUpdateDispatcher.submit(colony, request -> {
+            try {
+                return trackIfUnfulfilled(request, now);
+            } catch (Exception e) {
+                LOGGER.warn("{} Exception scanning for unfulfilled requests: {}", LogTags.ORDERING, e.getMessage());
+                return false;
+            }
+        }, afterScan);
+    }
 
-                // Only track SupplyLines request types
-                ItemStack item = extractItemFromRequest(request);
-                if (item == null || item.isEmpty()) {
-                    return false;
-                }
+    private boolean trackIfUnfulfilled(IRequest<?> request, long now) {
+        // Track requests that are either:
+        // - ASSIGNING: Looking for a resolver (no one can fulfill yet)
+        // - IN_PROGRESS: Assigned to our resolver but items not yet available
+        RequestState state = request.getState();
+        if (state != RequestState.ASSIGNING && state != RequestState.IN_PROGRESS) {
+            // Request is fulfilled, cancelled, or in followup state
+            trackedRequests.remove(request.getId());
+            return false;
+        }
 
-                int quantity = extractQuantityFromRequest(request);
-                if (quantity <= 0) {
-                    return false;
-                }
+        // Only track SupplyLines request types
+        ItemStack item = extractItemFromRequest(request);
+        if (item == null || item.isEmpty()) {
+            return false;
+        }
 
-                // Track if not already tracked
-                if (!trackedRequests.containsKey(request.getId())) {
-                    trackedRequests.put(request.getId(), new UnfulfilledRequest(request.getId(), now, item, quantity));
-                }
+        int quantity = extractQuantityFromRequest(request);
+        if (quantity <= 0) {
+            return false;
+        }
 
-                return false; // Don't trigger reassignment
-            });
-        } catch (Exception e) {
-            LOGGER.warn("{} Exception scanning for unfulfilled requests: {}", LogTags.ORDERING, e.getMessage());
+        // Track if not already tracked
+        if (!trackedRequests.containsKey(request.getId())) {
+            trackedRequests.put(request.getId(), new UnfulfilledRequest(request.getId(), now, item, quantity));
         }
+
+        return false; // Don't trigger reassignment
     }
 
     /**
@@ -383,8 +391,10 @@ public final class SpeculativeOrderManager {
         int eligibleForOrder = 0;
 
         for (UnfulfilledRequest req : trackedRequests.values()) {
-            // Skip if we already placed a speculative order for this request
-            if (req.speculativeOrderPlaced) {
+            // Skip if we, or another Stock Keeper in the colony, already placed a
+            // speculative order for this request
+            if (req.speculativeOrderPlaced
+                    || StockKeeperCoordinator.forColony(colony).isClaimedByOther(req.requestId, this, now)) {
                 skippedAlreadyOrdered++;
                 continue;
             }
@@ -425,8 +435,6 @@ public final class SpeculativeOrderManager {
     private SupplierResult findSpeculativeSupplier(ItemStack item, int requiredQuantity,
             SuppliersModule suppliersModule) {
 
-        ItemMatch.ItemStackKey itemKey = new ItemMatch.ItemStackKey(item);
-
         // Suppliers are already sorted by priority (0 = highest)
         for (SupplierEntry supplier : suppliersModule.getSuppliers()) {
             // Only check suppliers with speculative ordering enabled
@@ -438,24 +446,20 @@ public final class SpeculativeOrderManager {
                 continue;
             }
 
+            // Skip networks backing off after failed broadcasts
+            if (!BroadcastCircuitBreaker.canAttempt(supplier.getNetworkId())) {
+                continue;
+            }
+
             try {
-                InventorySummary summary = LogisticsManager.getSummaryOfNetwork(supplier.getNetworkId(), false);
+                NetworkSummaryCache.CachedSummary summary = NetworkSummaryCache.get(supplier.getNetworkId());
 
-                if (summary == null || summary.isEmpty()) {
+                if (summary.isEmpty()) {
                     continue;
                 }
 
                 // Count matching items in supplier's network
-                long available = 0;
-                for (BigItemStack bigStack : summary.getStacks()) {
-                    if (bigStack == null || bigStack.stack == null) {
-                        continue;
-                    }
-                    ItemMatch.ItemStackKey stackKey = new ItemMatch.ItemStackKey(bigStack.stack);
-                    if (stackKey.equals(itemKey)) {
-                        available += bigStack.count;
-                    }
-                }
+                long available = summary.getCount(item);
 
                 if (available > 0) {
                     int quantity = available >= requiredQuantity
@@ -476,6 +480,10 @@ public final class SpeculativeOrderManager {
      */
     private void placeSpeculativeOrder(Level level, SupplierResult result, UnfulfilledRequest req, long now) {
         SupplierEntry supplier = result.supplier;
+        if (!BroadcastCircuitBreaker.beginAttempt(supplier.getNetworkId())) {
+            // Another caller is probing the network; retried on a later pass
+            return;
+        }
 
         try {
             List<BigItemStack> orderedStacks = new ArrayList<>();
@@ -486,9 +494,12 @@ public final class SpeculativeOrderManager {
 
             boolean success = LogisticsManager.broadcastPackageRequest(supplier.getNetworkId(),
                     LogisticallyLinkedBehaviour.RequestType.RESTOCK, order, null, destinationAddress);
+            BroadcastCircuitBreaker.recordResult(supplier.getNetworkId(), success);
 
             if (success) {
                 req.speculativeOrderPlaced = true;
+                StockKeeperCoordinator.forColony(colony).claim(req.requestId, this, now,
+                        now + getDefaultDeliveryTicks() + ModConfig.SERVER.orderExpiryBufferTicks.get());
 
                 SpeculativeOrder specOrder = new SpeculativeOrder(req.item, result.availableQuantity, now,
                         getDefaultDeliveryTicks(), supplier.getNetworkId(), req.requestId);
@@ -515,6 +526,7 @@ public final class SpeculativeOrderManager {
             }
         } catch (Exception e) {
             LOGGER.error("{} Exception placing speculative order: {}", LogTags.ORDERING, e.getMessage());
+            BroadcastCircuitBreaker.recordResult(supplier.getNetworkId(), false);
         }
     }
 
@@ -554,6 +566,9 @@ public final class SpeculativeOrderManager {
      * request.
      */
     private void notifyRequestCompleted(UnfulfilledRequest req, IToken<?> requestId) {
+        if (req.speculativeOrderPlaced) {
+            StockKeeperCoordinator.forColony(colony).release(requestId, this);
+        }
         if (req.speculativeOrderPlaced && requestCompletedListener != null) {
             requestCompletedListener.accept(requestId);
         }
@@ -0,0 +1,62 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.colony.model.StagingRequest;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits buffered staging requests into packages that a single Create box can
+ * hold. Requests for the same item are kept next to each other so they tend to
+ * share a package. A request that alone needs more stacks than fit in one
+ * package gets a package of its own and is left to Create to split.
+ */
+final class StagingBundler {
+    private StagingBundler() {
+        // Utility class
+    }
+
+    /**
+     * Groups requests into packages.
+     *
+     * @param requests
+     *            buffered requests, in arrival order
+     * @param maxStacks
+     *            maximum number of item stacks per package
+     * @return packages in broadcast order; the first request of each is its
+     *         leader
+     */
+    static List<List<StagingRequest>> bundle(Collection<StagingRequest> requests, int maxStacks) {
+        Map<ItemMatch.ItemStackKey, List<StagingRequest>> byItem = new LinkedHashMap<>();
+        for (StagingRequest staging : requests) {
+            byItem.computeIfAbsent(staging.getItemKey(), k -> new ArrayList<>()).add(staging);
+        }
+        List<List<StagingRequest>> packages = new ArrayList<>();
+        List<StagingRequest> current = new ArrayList<>();
+        int currentStacks = 0;
+        for (List<StagingRequest> group : byItem.values()) {
+            for (StagingRequest staging : group) {
+                int stacks = stacksFor(staging);
+                if (!current.isEmpty() && currentStacks + stacks > maxStacks) {
+                    packages.add(current);
+                    current = new ArrayList<>();
+                    currentStacks = 0;
+                }
+                current.add(staging);
+                currentStacks += stacks;
+            }
+        }
+        if (!current.isEmpty()) {
+            packages.add(current);
+        }
+        return packages;
+    }
+
+    private static int stacksFor(StagingRequest staging) {
+        int maxStackSize = Math.max(1, staging.item.getMaxStackSize());
+        return Math.max(1, (staging.quantity + maxStackSize - 1) / maxStackSize);
+    }
+}
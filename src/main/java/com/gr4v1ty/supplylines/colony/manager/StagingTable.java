@@ -0,0 +1,119 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.colony.model.StagingRequest;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Staging requests keyed by (parent request, item), so one colony request can
+ * stage several item types at once, e.g. for tag, food or fuel requests. Keeps
+ * a part count per parent for cheap "is anything still staging for this
+ * request" checks.
+ */
+final class StagingTable {
+    private final Map<Key, StagingRequest> byKey = new LinkedHashMap<>();
+    private final Map<IToken<?>, Integer> partsByParent = new HashMap<>();
+
+    private record Key(IToken<?> parent, ItemMatch.ItemStackKey item) {
+    }
+
+    private static Key keyOf(StagingRequest staging) {
+        return new Key(staging.parentRequestId, staging.getItemKey());
+    }
+
+    /**
+     * Adds a staging request, replacing any request for the same parent and
+     * item.
+     *
+     * @return the replaced request, or null
+     */
+    @Nullable
+    StagingRequest put(StagingRequest staging) {
+        StagingRequest displaced = this.byKey.put(keyOf(staging), staging);
+        if (displaced == null) {
+            this.partsByParent.merge(staging.parentRequestId, 1, Integer::sum);
+        }
+        return displaced;
+    }
+
+    /**
+     * Whether this exact request is still in the table.
+     */
+    boolean contains(StagingRequest staging) {
+        return this.byKey.get(keyOf(staging)) == staging;
+    }
+
+    boolean containsParent(IToken<?> parentRequestId) {
+        return this.partsByParent.containsKey(parentRequestId);
+    }
+
+    /**
+     * Removes this exact request if it is still in the table.
+     */
+    boolean remove(StagingRequest staging) {
+        Key key = keyOf(staging);
+        if (this.byKey.get(key) != staging) {
+            return false;
+        }
+        this.byKey.remove(key);
+        this.partsByParent.computeIfPresent(staging.parentRequestId, (k, n) -> n > 1 ? n - 1 : null);
+        return true;
+    }
+
+    /**
+     * Removes every part of a parent request.
+     *
+     * @return the removed requests
+     */
+    List<StagingRequest> removeParent(IToken<?> parentRequestId) {
+        if (this.partsByParent.remove(parentRequestId) == null) {
+            return Collections.emptyList();
+        }
+        List<StagingRequest> removed = new ArrayList<>();
+        Iterator<StagingRequest> it = this.byKey.values().iterator();
+        while (it.hasNext()) {
+            StagingRequest staging = it.next();
+            if (parentRequestId.equals(staging.parentRequestId)) {
+                removed.add(staging);
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Gets a read-only view of all requests in insertion order.
+     */
+    Collection<StagingRequest> values() {
+        return Collections.unmodifiableCollection(this.byKey.values());
+    }
+
+    /**
+     * Gets a copy of all requests, safe to iterate while removing.
+     */
+    List<StagingRequest> snapshot() {
+        return new ArrayList<>(this.byKey.values());
+    }
+
+    int size() {
+        return this.byKey.size();
+    }
+
+    boolean isEmpty() {
+        return this.byKey.isEmpty();
+    }
+
+    void clear() {
+        this.byKey.clear();
+        this.partsByParent.clear();
+    }
+}
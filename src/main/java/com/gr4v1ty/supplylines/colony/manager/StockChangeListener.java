@@ -1,7 +1,6 @@
 package com.gr4v1ty.supplylines.colony.manager;
 
-import com.gr4v1ty.supplylines.util.ItemMatch;
-import java.util.Map;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
 
 /**
  * Functional interface for receiving notifications when stock levels change.
@@ -13,7 +12,9 @@ public interface StockChangeListener {
      * Called when stock levels have increased for one or more items.
      *
      * @param increases
-     *            Map of item keys to the quantity increase (only positive deltas)
+     *            Table of item key ids to the quantity increase (only
+     *            positive deltas). Reused between snapshots, so do not retain
+     *            it.
      */
-    void onStockChanged(Map<ItemMatch.ItemStackKey, Long> increases);
+    void onStockChanged(ItemCountTable increases);
 }
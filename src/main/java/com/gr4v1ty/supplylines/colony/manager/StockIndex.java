@@ -0,0 +1,115 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.entity.FurnaceBlockEntity;
+
+/**
+ * Inverted index over the items present in a {@link StockSnapshot}. Maps item
+ * tags to {@link ItemMatch.ItemStackKey} ids and keeps precomputed category
+ * lists (fuel, food, tools), so tag and category queries only visit matching
+ * items instead of testing a freshly built ItemStack for every entry in the
+ * network.
+ *
+ * <p>
+ * The index depends only on which items are present, not on their counts, so
+ * it is rebuilt when the snapshot's key set changes or tags are reloaded.
+ */
+public final class StockIndex {
+    private static final IntArrayList NONE = new IntArrayList(0);
+
+    /** Bumped on tag reloads so every index rebuilds on next use. */
+    private static int tagEpoch;
+
+    private final Map<TagKey<Item>, IntArrayList> idsByTag = new HashMap<>();
+    private final IntArrayList fuelIds = new IntArrayList();
+    private final IntArrayList foodIds = new IntArrayList();
+    private final IntArrayList toolIds = new IntArrayList();
+    private long builtKeysVersion = -1L;
+    private int builtTagEpoch = -1;
+
+    /**
+     * Rebuilds the index if the snapshot's item set or the loaded tags changed
+     * since the last build.
+     */
+    public void ensureCurrent(StockSnapshot snapshot) {
+        if (this.builtKeysVersion == snapshot.getKeysVersion() && this.builtTagEpoch == tagEpoch) {
+            return;
+        }
+        this.builtKeysVersion = snapshot.getKeysVersion();
+        this.builtTagEpoch = tagEpoch;
+        this.rebuild(snapshot.getLevels());
+    }
+
+    @SuppressWarnings("deprecation")
+    private void rebuild(ItemCountTable levels) {
+        for (IntArrayList ids : this.idsByTag.values()) {
+            ids.clear();
+        }
+        this.fuelIds.clear();
+        this.foodIds.clear();
+        this.toolIds.clear();
+        for (int slot = 0; slot < levels.slotCount(); ++slot) {
+            if (!levels.isUsed(slot)) {
+                continue;
+            }
+            int id = levels.keyAt(slot);
+            ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.byId(id);
+            ItemStack prototype = key != null ? key.prototype() : ItemStack.EMPTY;
+            if (prototype.isEmpty()) {
+                continue;
+            }
+            prototype.getItem().builtInRegistryHolder().tags()
+                    .forEach(tag -> this.idsByTag.computeIfAbsent(tag, k -> new IntArrayList()).add(id));
+            if (FurnaceBlockEntity.isFuel(prototype)) {
+                this.fuelIds.add(id);
+            }
+            if (prototype.isEdible()) {
+                this.foodIds.add(id);
+            }
+            if (prototype.isDamageableItem()) {
+                this.toolIds.add(id);
+            }
+        }
+    }
+
+    /** Key ids of present items carrying the given tag. */
+    public IntArrayList idsForTag(TagKey<Item> tag) {
+        IntArrayList ids = this.idsByTag.get(tag);
+        return ids != null ? ids : NONE;
+    }
+
+    /** Ids of present items that can be burned in a furnace. */
+    public IntArrayList fuelIds() {
+        return this.fuelIds;
+    }
+
+    /**
+     * Ids of present edible items. Candidates only; Food requests still apply
+     * their own matcher.
+     */
+    public IntArrayList foodIds() {
+        return this.foodIds;
+    }
+
+    /**
+     * Ids of present damageable items. Candidates only; Tool requests still apply
+     * their own matcher.
+     */
+    public IntArrayList toolIds() {
+        return this.toolIds;
+    }
+
+    /**
+     * Invalidates every index after a tag reload.
+     */
+    public static void onTagsReloaded() {
+        ++tagEpoch;
+    }
+}
@@ -0,0 +1,214 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.colony.buildings.BuildingStockKeeper;
+import com.gr4v1ty.supplylines.config.ModConfig;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.minecolonies.api.colony.IColony;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Coordinates the Stock Keeper huts of one colony. Huts whose Stock Tickers
+ * share a Create frequency read one {@link SharedStock} snapshot instead of
+ * each building their own. Restock and speculative orders are claimed here
+ * first, so two huts never order for the same shortfall. Requests that only
+ * the network can fill are steered to one hut, chosen by queue depth and
+ * distance to the requester.
+ * <p>
+ * A coordinator lives as long as its colony has a loaded hut: huts register
+ * when they start ticking and unregister when their chunk unloads or they are
+ * destroyed, and the coordinator is dropped once the last hut and shared
+ * snapshot are gone.
+ */
+public final class StockKeeperCoordinator {
+    private static final Map<IColony, StockKeeperCoordinator> BY_COLONY = new IdentityHashMap<>();
+
+    private final IColony colony;
+    private final Set<BuildingStockKeeper> huts = new LinkedHashSet<>();
+    private final Map<UUID, SharedStock> networks = new HashMap<>();
+    private final Map<Object, OrderClaim> orderClaims = new HashMap<>();
+
+    private record OrderClaim(Object owner, long expiresAt) {
+    }
+
+    /**
+     * Claim key for an order of an item into a hut's local network.
+     *
+     * @param network
+     *            frequency of the ordering hut's Stock Ticker
+     * @param item
+     *            item ordered
+     */
+    public record OrderKey(UUID network, ItemMatch.ItemStackKey item) {
+    }
+
+    private StockKeeperCoordinator(IColony colony) {
+        this.colony = colony;
+    }
+
+    public static StockKeeperCoordinator forColony(IColony colony) {
+        return BY_COLONY.computeIfAbsent(colony, StockKeeperCoordinator::new);
+    }
+
+    /**
+     * Unregisters the huts in an unloaded chunk. They register again once
+     * their worker ticks after the chunk loads.
+     */
+    public static void onChunkUnloaded(Level level, ChunkPos chunk) {
+        List<BuildingStockKeeper> unloaded = new ArrayList<>();
+        for (StockKeeperCoordinator coordinator : BY_COLONY.values()) {
+            if (coordinator.colony.getDimension() != level.dimension()) {
+                continue;
+            }
+            for (BuildingStockKeeper hut : coordinator.huts) {
+                BlockPos pos = hut.getPosition();
+                if (SectionPos.blockToSectionCoord(pos.getX()) == chunk.x
+                        && SectionPos.blockToSectionCoord(pos.getZ()) == chunk.z) {
+                    unloaded.add(hut);
+                }
+            }
+        }
+        // Unloading changes the coordinator map, so it is not done while walking it
+        for (BuildingStockKeeper hut : unloaded) {
+            hut.onChunkUnloaded();
+        }
+    }
+
+    /** Drops all coordinators. Called on server stop. */
+    public static void clear() {
+        BY_COLONY.clear();
+    }
+
+    public void register(BuildingStockKeeper hut) {
+        this.huts.add(hut);
+    }
+
+    public void unregister(BuildingStockKeeper hut) {
+        this.huts.remove(hut);
+        this.dropIfUnused();
+    }
+
+    /**
+     * Gets the shared snapshot for a frequency and subscribes the hut to it,
+     * leaving the one it used before.
+     */
+    SharedStock join(NetworkIntegration hut, @Nullable SharedStock previous, UUID freqId) {
+        SharedStock shared = this.networks.computeIfAbsent(freqId, SharedStock::new);
+        if (previous != shared) {
+            this.leave(hut, previous);
+            shared.subscribe(hut);
+        }
+        return shared;
+    }
+
+    /**
+     * Unsubscribes a hut from a shared snapshot, dropping the snapshot once no
+     * hut reads it.
+     */
+    void leave(NetworkIntegration hut, @Nullable SharedStock shared) {
+        if (shared == null) {
+            return;
+        }
+        shared.unsubscribe(hut);
+        if (!shared.hasSubscribers()) {
+            this.networks.values().remove(shared);
+        }
+        this.dropIfUnused();
+    }
+
+    private void dropIfUnused() {
+        if (this.huts.isEmpty() && this.networks.isEmpty()) {
+            BY_COLONY.remove(this.colony, this);
+        }
+    }
+
+    /**
+     * Whether another owner holds a live claim on an order.
+     *
+     * @param key
+     *            an {@link OrderKey}, or a request token for speculative orders
+     */
+    public boolean isClaimedByOther(Object key, Object owner, long now) {
+        OrderClaim claim = this.orderClaims.get(key);
+        return claim != null && claim.owner() != owner && claim.expiresAt() > now;
+    }
+
+    /**
+     * Claims an order for an owner until {@code expiresAt}, unless another
+     * owner holds a live claim on it.
+     *
+     * @return whether the owner now holds the claim
+     */
+    public boolean claim(Object key, Object owner, long now, long expiresAt) {
+        if (this.isClaimedByOther(key, owner, now)) {
+            return false;
+        }
+        // Orders are rare, so expired claims are swept here
+        this.orderClaims.values().removeIf(c -> c.expiresAt() <= now);
+        this.orderClaims.put(key, new OrderClaim(owner, expiresAt));
+        return true;
+    }
+
+    /**
+     * Releases an owner's claim, e.g. once the ordered items arrived.
+     */
+    public void release(Object key, Object owner) {
+        OrderClaim claim = this.orderClaims.get(key);
+        if (claim != null && claim.owner() == owner) {
+            this.orderClaims.remove(key);
+        }
+    }
+
+    /**
+     * Picks the hut that should stage a request from the network. Only huts on
+     * the asking hut's frequency with an active worker are considered. Each
+     * staging request already queued counts as {@code hutBalanceQueueWeight}
+     * blocks of distance; ties go to the lowest position.
+     *
+     * @param asking
+     *            the hut being asked; always a candidate
+     * @param requesterPos
+     *            where the items go, or null if unknown
+     * @param canServe
+     *            whether another hut can fill the request from the network
+     */
+    public BuildingStockKeeper preferredHut(BuildingStockKeeper asking, @Nullable BlockPos requesterPos,
+            Predicate<BuildingStockKeeper> canServe) {
+        UUID freqId = asking.getNetworkFrequency();
+        if (freqId == null || this.huts.size() < 2) {
+            return asking;
+        }
+        int queueWeight = ModConfig.SERVER.hutBalanceQueueWeight.get();
+        BuildingStockKeeper best = asking;
+        double bestScore = score(asking, requesterPos, queueWeight);
+        for (BuildingStockKeeper hut : this.huts) {
+            if (hut == asking || !freqId.equals(hut.getNetworkFrequency()) || !hut.isWorkerActive()
+                    || !hut.hasStockTicker() || !canServe.test(hut)) {
+                continue;
+            }
+            double score = score(hut, requesterPos, queueWeight);
+            if (score < bestScore || (score == bestScore && hut.getPosition().compareTo(best.getPosition()) < 0)) {
+                best = hut;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static double score(BuildingStockKeeper hut, @Nullable BlockPos requesterPos, int queueWeight) {
+        double distance = requesterPos != null ? Math.sqrt(requesterPos.distSqr(hut.getPosition())) : 0.0;
+        return (double) hut.getPendingStagingCount() * queueWeight + distance;
+    }
+}
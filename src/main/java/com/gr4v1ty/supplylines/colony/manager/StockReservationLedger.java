@@ -0,0 +1,140 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.colony.model.StagingRequest;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quantities of network stock already committed to staging requests, keyed by
+ * item key id. A staging request is debited when it is created and credited
+ * once it completes, is cancelled or times out, so that availability checks
+ * only see stock nobody has claimed yet. Huts reading the same network
+ * frequency share one ledger.
+ * <p>
+ * Once a request is broadcast, Create takes its items out of the network, and
+ * a later snapshot no longer counts them. Its quantity then stays reserved as a
+ * shipment only until such a snapshot arrives, so the items are not subtracted
+ * twice while the package is in transit.
+ */
+public final class StockReservationLedger {
+    private final ItemCountTable reserved = new ItemCountTable(16);
+    private final List<Shipment> shipments = new ArrayList<>();
+    private long version;
+
+    /**
+     * A broadcast quantity still counted in the network snapshot.
+     *
+     * @param fetchCount
+     *            {@link com.gr4v1ty.supplylines.compat.create.NetworkSummaryCache#getFetchCount()}
+     *            at broadcast time
+     */
+    private record Shipment(int keyId, long quantity, long fetchCount) {
+    }
+
+    /**
+     * Reserves the staging request's quantity. Does nothing if it already holds
+     * a reservation.
+     */
+    public void reserve(StagingRequest staging) {
+        if (staging.reserved || staging.quantity <= 0) {
+            return;
+        }
+        this.reserve(staging.getItemKey().getId(), staging.quantity);
+        staging.reserved = true;
+    }
+
+    /**
+     * Releases the staging request's reservation. Safe to call more than once.
+     */
+    public void release(StagingRequest staging) {
+        if (!staging.reserved) {
+            return;
+        }
+        staging.reserved = false;
+        this.release(staging.getItemKey().getId(), staging.quantity);
+    }
+
+    /**
+     * Hands a broadcast staging request's reservation over to a shipment, which
+     * is released by {@link #onSnapshotTaken(long)}. The request itself no
+     * longer holds a reservation.
+     *
+     * @param fetchCount
+     *            the network summary fetch count at broadcast time
+     */
+    public void ship(StagingRequest staging, long fetchCount) {
+        if (!staging.reserved) {
+            return;
+        }
+        staging.reserved = false;
+        this.ship(staging.getItemKey().getId(), staging.quantity, fetchCount);
+    }
+
+    void reserve(int keyId, long quantity) {
+        this.reserved.addTo(keyId, quantity);
+        ++this.version;
+    }
+
+    void release(int keyId, long quantity) {
+        long remaining = this.reserved.get(keyId) - quantity;
+        if (remaining > 0L) {
+            this.reserved.put(keyId, remaining);
+        } else {
+            this.reserved.remove(keyId);
+        }
+        ++this.version;
+    }
+
+    void ship(int keyId, long quantity, long fetchCount) {
+        this.shipments.add(new Shipment(keyId, quantity, fetchCount));
+    }
+
+    /**
+     * Releases the shipments a network snapshot no longer counts. The first
+     * summary fetched after a broadcast can still come from Create's own
+     * cache, so a shipment is released by the second one.
+     *
+     * @param summaryFetchNumber
+     *            fetch number of the summary the snapshot was built from
+     */
+    public void onSnapshotTaken(long summaryFetchNumber) {
+        for (int i = this.shipments.size() - 1; i >= 0; --i) {
+            Shipment shipment = this.shipments.get(i);
+            if (summaryFetchNumber > shipment.fetchCount() + 1L) {
+                this.shipments.remove(i);
+                this.release(shipment.keyId(), shipment.quantity());
+            }
+        }
+    }
+
+    /**
+     * Gets the reserved quantity for an item key id.
+     */
+    public long getReserved(int keyId) {
+        return this.reserved.get(keyId);
+    }
+
+    /**
+     * Gets the stock left after reservations, never negative.
+     *
+     * @param keyId
+     *            item key id
+     * @param stock
+     *            stock level from the snapshot
+     */
+    public long getUncommitted(int keyId, long stock) {
+        return Math.max(0L, stock - this.reserved.get(keyId));
+    }
+
+    /**
+     * Version bumped whenever any reservation changes.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    public boolean isEmpty() {
+        return this.reserved.isEmpty();
+    }
+}
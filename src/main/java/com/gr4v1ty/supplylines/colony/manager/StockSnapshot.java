@@ -0,0 +1,100 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+
+/**
+ * Double-buffered item count snapshot of a Create network. The next snapshot is
+ * filled into a back buffer which is swapped in by {@link #commit()}, so
+ * steady-state refreshes reuse the same tables instead of allocating new maps.
+ */
+public final class StockSnapshot {
+    private ItemCountTable current = new ItemCountTable();
+    private ItemCountTable next = new ItemCountTable();
+    private final ItemCountTable increases = new ItemCountTable();
+    private long version;
+    private long keysVersion;
+
+    /**
+     * Clears and returns the back buffer to be filled with the next snapshot.
+     */
+    public ItemCountTable beginUpdate() {
+        this.next.clear();
+        return this.next;
+    }
+
+    /**
+     * Swaps the back buffer in as the current snapshot. Increases relative to the
+     * previous snapshot are collected in the same pass and exposed via
+     * {@link #getIncreases()} until the next commit.
+     *
+     * @return true if any item count differs from the previous snapshot
+     */
+    public boolean commit() {
+        this.increases.clear();
+        ItemCountTable prev = this.current;
+        ItemCountTable fresh = this.next;
+        boolean keysChanged = prev.size() != fresh.size();
+        boolean changed = keysChanged;
+        for (int slot = 0; slot < fresh.slotCount(); ++slot) {
+            if (!fresh.isUsed(slot)) {
+                continue;
+            }
+            int id = fresh.keyAt(slot);
+            long newQty = fresh.valueAt(slot);
+            long oldQty = prev.get(id);
+            if (oldQty == 0L && !prev.containsKey(id)) {
+                keysChanged = true;
+                changed = true;
+            }
+            if (newQty == oldQty) {
+                continue;
+            }
+            changed = true;
+            if (newQty > oldQty) {
+                this.increases.put(id, newQty - oldQty);
+            }
+        }
+        this.current = fresh;
+        this.next = prev;
+        if (changed) {
+            ++this.version;
+        }
+        if (keysChanged) {
+            ++this.keysVersion;
+        }
+        return changed;
+    }
+
+    /** Current item key id to count table. Must not be modified by callers. */
+    public ItemCountTable getLevels() {
+        return this.current;
+    }
+
+    /** Positive deltas detected by the last {@link #commit()}. */
+    public ItemCountTable getIncreases() {
+        return this.increases;
+    }
+
+    public long get(int itemId) {
+        return this.current.get(itemId);
+    }
+
+    public boolean isEmpty() {
+        return this.current.isEmpty();
+    }
+
+    /**
+     * Monotonic counter bumped whenever a commit changes any item count.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Monotonic counter bumped only when the set of items present changes, used to
+     * rebuild indexes that do not depend on the counts.
+     */
+    public long getKeysVersion() {
+        return this.keysVersion;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Item count tables of a restock evaluation's suppliers, in priority order.
+ * Resolved once per evaluation, so each policy costs one table lookup per
+ * supplier instead of a walk over every supplier's network summary.
+ */
+final class SupplierCounts {
+    private final ItemCountTable[] tables;
+
+    /**
+     * @param tables
+     *            count table per supplier, null for suppliers whose network is
+     *            empty or unavailable
+     */
+    SupplierCounts(@Nullable ItemCountTable[] tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Finds the next supplier, from {@code from} on, that holds any of an item.
+     *
+     * @param itemId
+     *            the item key id
+     * @param from
+     *            first supplier index to check
+     * @return the supplier index, or -1 if no later supplier has the item
+     */
+    int nextWithStock(int itemId, int from) {
+        for (int i = from; i < this.tables.length; ++i) {
+            ItemCountTable counts = this.tables[i];
+            if (counts != null && counts.get(itemId) > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets how much of an item a supplier holds.
+     */
+    long get(int supplier, int itemId) {
+        ItemCountTable counts = this.tables[supplier];
+        return counts != null ? counts.get(itemId) : 0L;
+    }
+}
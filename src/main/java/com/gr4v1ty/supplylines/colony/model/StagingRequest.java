@@ -1,16 +1,32 @@
 package com.gr4v1ty.supplylines.colony.model;
 
+import com.gr4v1ty.supplylines.util.ItemMatch;
 import com.minecolonies.api.colony.requestsystem.token.IToken;
+import com.minecolonies.api.colony.requestsystem.token.StandardToken;
+import java.util.UUID;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.Nullable;
 
 public class StagingRequest {
+    private static final String TAG_ITEM = "Item";
+    private static final String TAG_QUANTITY = "Qty";
+    private static final String TAG_REQUESTED_AT = "At";
+    private static final String TAG_STATE = "State";
+    private static final String TAG_PARENT = "Parent";
+
     public ItemStack item = ItemStack.EMPTY;
     public int quantity = 0;
     public long requestedAtTick = 0L;
     public boolean broadcasted = false;
     public State state = State.QUEUED;
     public IToken<?> parentRequestId = null;
-    public IToken<?> bundleLeaderId = null;
+    /** Leader of the package this request ships in, or null if it is a leader itself. */
+    public StagingRequest bundleLeader = null;
+    /** Whether this request currently holds a stock reservation. */
+    public boolean reserved = false;
+    @Nullable
+    private ItemMatch.ItemStackKey itemKey;
 
     /**
      * Creates a new StagingRequest in QUEUED state.
@@ -36,6 +52,62 @@ public class StagingRequest {
         return staging;
     }
 
+    /**
+     * Gets the interned key of this request's item, computed on first use.
+     */
+    public ItemMatch.ItemStackKey getItemKey() {
+        ItemMatch.ItemStackKey key = this.itemKey;
+        if (key == null) {
+            key = ItemMatch.ItemStackKey.of(this.item);
+            this.itemKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Serializes this request for building save data. Request tokens are stored
+     * by their UUID; bundle leadership is left to the caller.
+     *
+     * @return the tag, or null if a token is not UUID based and cannot be saved
+     */
+    @Nullable
+    public CompoundTag toNBT() {
+        Object parentId = this.parentRequestId != null ? this.parentRequestId.getIdentifier() : null;
+        if (!(parentId instanceof UUID parent)) {
+            return null;
+        }
+        CompoundTag tag = new CompoundTag();
+        ItemStack single = this.item.copy();
+        single.setCount(1);
+        tag.put(TAG_ITEM, single.save(new CompoundTag()));
+        tag.putInt(TAG_QUANTITY, this.quantity);
+        tag.putLong(TAG_REQUESTED_AT, this.requestedAtTick);
+        // BROADCASTED implies broadcasted, so the state alone is enough
+        tag.putByte(TAG_STATE, (byte) this.state.ordinal());
+        tag.putUUID(TAG_PARENT, parent);
+        return tag;
+    }
+
+    /**
+     * Restores a request saved by {@link #toNBT()}.
+     *
+     * @return the request, or null if the tag does not describe a usable one
+     */
+    @Nullable
+    public static StagingRequest fromNBT(CompoundTag tag) {
+        ItemStack item = ItemStack.of(tag.getCompound(TAG_ITEM));
+        int stateOrdinal = tag.getByte(TAG_STATE);
+        if (item.isEmpty() || !tag.hasUUID(TAG_PARENT) || stateOrdinal < 0
+                || stateOrdinal >= State.values().length) {
+            return null;
+        }
+        StagingRequest staging = create(item, tag.getInt(TAG_QUANTITY), tag.getLong(TAG_REQUESTED_AT),
+                new StandardToken(tag.getUUID(TAG_PARENT)));
+        staging.state = State.values()[stateOrdinal];
+        staging.broadcasted = staging.state == State.BROADCASTED;
+        return staging;
+    }
+
     public static enum State {
         QUEUED, BROADCASTED, COMPLETED, CANCELLED;
     }
@@ -0,0 +1,128 @@
+package com.gr4v1ty.supplylines.compat.create;
+
+import com.gr4v1ty.supplylines.config.ModConfig;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+/**
+ * Server-wide circuit breaker for Create package broadcasts, tracked per
+ * network frequency. Failed broadcasts are counted; below
+ * {@code broadcastFailureThreshold} failures in a row the breaker stays closed
+ * and broadcasts go through. Reaching the threshold opens it: the network is
+ * skipped for {@code broadcastBackoffBaseTicks}, doubling with each further
+ * failure up to {@code broadcastBackoffMaxTicks}. Once the wait is over the
+ * breaker is half-open and exactly one caller gets to send a probe; everyone
+ * else keeps skipping the network until the probe's result is recorded.
+ * Success closes the breaker, failure re-opens it with a longer wait.
+ * <p>
+ * Callers that only pick a network check {@link #canAttempt(UUID)}; the caller
+ * about to broadcast takes the attempt with {@link #beginAttempt(UUID)} and
+ * must report it with {@link #recordResult(UUID, boolean)}.
+ */
+public final class BroadcastCircuitBreaker {
+    public enum State {
+        /** Broadcasts go through. */
+        CLOSED,
+        /** Too many failures; the network is skipped until the wait is over. */
+        OPEN,
+        /** Wait is over; the next broadcast is a probe. */
+        HALF_OPEN
+    }
+
+    private static final Map<UUID, Breaker> BREAKERS = new HashMap<>();
+
+    private BroadcastCircuitBreaker() {
+        // Utility class
+    }
+
+    /**
+     * Whether a broadcast to the network could be attempted right now. Does
+     * not take the probe of a half-open breaker.
+     */
+    public static boolean canAttempt(UUID freqId) {
+        Breaker breaker = BREAKERS.get(freqId);
+        return breaker == null || breaker.allows(currentTick());
+    }
+
+    /**
+     * Takes the right to broadcast to the network now. On a half-open breaker
+     * only the first caller gets it, and holds the probe until it records the
+     * result.
+     *
+     * @return whether the caller may broadcast
+     */
+    public static boolean beginAttempt(UUID freqId) {
+        Breaker breaker = BREAKERS.get(freqId);
+        if (breaker == null) {
+            return true;
+        }
+        long now = currentTick();
+        if (!breaker.allows(now)) {
+            return false;
+        }
+        if (breaker.isOpen()) {
+            // A lost result must not block the network for good
+            breaker.probeUntil = now + ModConfig.SERVER.broadcastBackoffBaseTicks.get();
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a broadcast to the network.
+     */
+    public static void recordResult(UUID freqId, boolean success) {
+        if (success) {
+            BREAKERS.remove(freqId);
+            return;
+        }
+        Breaker breaker = BREAKERS.computeIfAbsent(freqId, k -> new Breaker());
+        ++breaker.failures;
+        breaker.probeUntil = Long.MIN_VALUE;
+        if (!breaker.isOpen()) {
+            return;
+        }
+        int shift = Math.min(breaker.failures - ModConfig.SERVER.broadcastFailureThreshold.get(), 16);
+        long backoff = Math.min((long) ModConfig.SERVER.broadcastBackoffBaseTicks.get() << shift,
+                ModConfig.SERVER.broadcastBackoffMaxTicks.get());
+        breaker.retryAt = currentTick() + backoff;
+    }
+
+    /**
+     * Gets the breaker state of a network, for display.
+     */
+    public static State getState(UUID freqId) {
+        Breaker breaker = BREAKERS.get(freqId);
+        if (breaker == null || !breaker.isOpen()) {
+            return State.CLOSED;
+        }
+        return currentTick() >= breaker.retryAt ? State.HALF_OPEN : State.OPEN;
+    }
+
+    /** Forgets all failures. Called on server stop. */
+    public static void clear() {
+        BREAKERS.clear();
+    }
+
+    private static long currentTick() {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        return server != null ? server.getTickCount() : 0L;
+    }
+
+    private static final class Breaker {
+        private int failures;
+        private long retryAt;
+        /** Tick until which a half-open breaker's probe is in flight. */
+        private long probeUntil = Long.MIN_VALUE;
+
+        private boolean isOpen() {
+            return this.failures >= ModConfig.SERVER.broadcastFailureThreshold.get();
+        }
+
+        private boolean allows(long now) {
+            return !this.isOpen() || (now >= this.retryAt && now >= this.probeUntil);
+        }
+    }
+}
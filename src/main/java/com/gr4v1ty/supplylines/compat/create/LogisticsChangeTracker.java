@@ -0,0 +1,69 @@
+package com.gr4v1ty.supplylines.compat.create;
+
+import com.simibubi.create.content.logistics.packagerLink.LogisticallyLinkedBehaviour;
+import com.simibubi.create.foundation.blockEntity.behaviour.BlockEntityBehaviour;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+/**
+ * Tracks change epochs for Create logistics networks, fed by mixins on Create's
+ * package request and unpacking paths. Consumers remember the epoch they last
+ * saw and only redo work when {@link #getEpoch(UUID)} moves.
+ *
+ * <p>
+ * Package requests are attributed to their frequency. Unpacking at a packager
+ * is attributed to the frequencies of the packager links attached to it.
+ * Inventory changes that bypass packagers, such as a hopper feeding a vault,
+ * are not tracked and are picked up by the snapshot safety timeout.
+ */
+public final class LogisticsChangeTracker {
+    private static final Map<UUID, Long> FREQUENCY_EPOCHS = new HashMap<>();
+
+    private LogisticsChangeTracker() {
+        // Utility class
+    }
+
+    /**
+     * Marks a network as changed, e.g. after a package request was sent from it.
+     */
+    public static void markDirty(UUID freqId) {
+        FREQUENCY_EPOCHS.merge(freqId, 1L, Long::sum);
+    }
+
+    /**
+     * Marks the networks a packager belongs to as changed, e.g. after it
+     * unpacked a box into its inventory.
+     */
+    public static void markPackagerDirty(BlockEntity packager) {
+        Level level = packager.getLevel();
+        if (level == null) {
+            return;
+        }
+        BlockPos pos = packager.getBlockPos();
+        for (Direction direction : Direction.values()) {
+            LogisticallyLinkedBehaviour link = BlockEntityBehaviour.get(level, pos.relative(direction),
+                    LogisticallyLinkedBehaviour.TYPE);
+            if (link != null && link.freqId != null) {
+                markDirty(link.freqId);
+            }
+        }
+    }
+
+    /**
+     * Gets the change epoch for a network. The value only ever grows and changes
+     * whenever the network is marked dirty.
+     */
+    public static long getEpoch(UUID freqId) {
+        return FREQUENCY_EPOCHS.getOrDefault(freqId, 0L);
+    }
+
+    /** Resets all epochs. Called on server stop. */
+    public static void clear() {
+        FREQUENCY_EPOCHS.clear();
+    }
+}
@@ -0,0 +1,171 @@
+package com.gr4v1ty.supplylines.compat.create;
+
+import com.gr4v1ty.supplylines.config.ModConfig;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.gr4v1ty.supplylines.util.LogTags;
+import com.simibubi.create.content.logistics.BigItemStack;
+import com.simibubi.create.content.logistics.packager.InventorySummary;
+import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.server.ServerLifecycleHooks;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server-wide cache of Create network summaries keyed by network UUID. Each
+ * network is fetched from {@link LogisticsManager} at most once per staleness
+ * window (see {@code networkSummaryCacheTicks}) and the result, including an
+ * item key id to count table, is shared by every Stock Keeper on the server.
+ */
+public final class NetworkSummaryCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkSummaryCache.class);
+    private static final Map<UUID, CachedSummary> CACHE = new HashMap<>();
+    private static long hits;
+    private static long misses;
+    /** Summaries fetched from Create so far; numbers each fetch */
+    private static long fetches;
+
+    private NetworkSummaryCache() {
+        // Utility class
+    }
+
+    /**
+     * Gets the summary for a network, fetching it if the cached copy is stale.
+     *
+     * @param networkId
+     *            the network frequency UUID.
+     * @return the cached summary; never null, but may be offline.
+     */
+    public static CachedSummary get(UUID networkId) {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null) {
+            // No server clock to scope against (client side) - don't cache
+            ++misses;
+            return fetch(networkId, 0L);
+        }
+        long now = server.getTickCount();
+        CachedSummary cached = CACHE.get(networkId);
+        if (cached != null && now - cached.fetchedAt < ModConfig.SERVER.networkSummaryCacheTicks.get()) {
+            ++hits;
+            return cached;
+        }
+        ++misses;
+        CachedSummary fresh = fetch(networkId, now);
+        CACHE.put(networkId, fresh);
+        return fresh;
+    }
+
+    private static CachedSummary fetch(UUID networkId, long now) {
+        InventorySummary summary;
+        try {
+            summary = LogisticsManager.getSummaryOfNetwork(networkId, false);
+        } catch (Exception e) {
+            summary = null;
+        }
+        return new CachedSummary(summary, now, ++fetches);
+    }
+
+    /**
+     * Gets the number of summaries fetched from Create so far. A summary whose
+     * {@link CachedSummary#getFetchNumber()} is higher was fetched later.
+     */
+    public static long getFetchCount() {
+        return fetches;
+    }
+
+    /**
+     * Drops a network's cached summary so the next lookup fetches it again, e.g.
+     * after an order was placed on it.
+     */
+    public static void invalidate(UUID networkId) {
+        CACHE.remove(networkId);
+    }
+
+    /** Clears all cached summaries and counters. Called on server stop. */
+    public static void clear() {
+        CACHE.clear();
+        hits = 0L;
+        misses = 0L;
+    }
+
+    /**
+     * Logs the hit and miss counts since the last report and resets them.
+     * Called every {@code cacheStatsLogIntervalTicks}.
+     */
+    public static void logStats() {
+        long lookups = hits + misses;
+        LOGGER.info("{} Network summary cache: {} hits, {} misses ({}% hit rate), {} networks cached",
+                LogTags.INVENTORY, hits, misses, lookups > 0 ? hits * 100 / lookups : 0, CACHE.size());
+        hits = 0L;
+        misses = 0L;
+    }
+
+    /**
+     * A network summary as seen at one point in time, with item counts
+     * pre-aggregated by item key id.
+     */
+    public static final class CachedSummary {
+        @Nullable
+        private final InventorySummary summary;
+        private final ItemCountTable counts;
+        private final long fetchedAt;
+        private final long fetchNumber;
+
+        private CachedSummary(@Nullable InventorySummary summary, long fetchedAt, long fetchNumber) {
+            this.summary = summary;
+            this.fetchedAt = fetchedAt;
+            this.fetchNumber = fetchNumber;
+            if (summary == null || summary.isEmpty()) {
+                this.counts = new ItemCountTable(0);
+                return;
+            }
+            List<BigItemStack> stacks = summary.getStacks();
+            this.counts = new ItemCountTable(stacks.size());
+            for (int i = 0; i < stacks.size(); ++i) {
+                BigItemStack bigStack = stacks.get(i);
+                if (bigStack == null || bigStack.stack == null || bigStack.stack.isEmpty()) {
+                    continue;
+                }
+                this.counts.addTo(ItemMatch.ItemStackKey.of(bigStack.stack).getId(), bigStack.count);
+            }
+        }
+
+        /** True if the network could be queried at all. */
+        public boolean isOnline() {
+            return this.summary != null;
+        }
+
+        public boolean isEmpty() {
+            return this.summary == null || this.summary.isEmpty();
+        }
+
+        /** Position of this fetch in {@link #getFetchCount()}'s sequence. */
+        public long getFetchNumber() {
+            return this.fetchNumber;
+        }
+
+        /** The raw Create summary, or null if the network is offline. */
+        @Nullable
+        public InventorySummary getSummary() {
+            return this.summary;
+        }
+
+        /** Item key id to count table. Shared; must not be modified. */
+        public ItemCountTable getCounts() {
+            return this.counts;
+        }
+
+        /** Count of the exact item and NBT of the given stack. */
+        public long getCount(ItemStack stack) {
+            ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.find(stack);
+            return key != null ? this.counts.get(key.getId()) : 0L;
+        }
+    }
+}
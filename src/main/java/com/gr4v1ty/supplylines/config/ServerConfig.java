@@ -15,11 +15,24 @@ public final class ServerConfig {
     public final IntValue defaultRestockIntervalTicks;
     public final IntValue stagingTimeoutTicks;
     public final IntValue bufferWindowTicks;
+    public final IntValue maxStacksPerPackage;
     public final IntValue displayUpdateIntervalTicks;
     public final IntValue defaultDeliveryTicks;
     public final IntValue orderExpiryBufferTicks;
     public final IntValue defaultInvSigIntervalTicks;
+    public final BooleanValue changeDrivenRackChecks;
+    public final IntValue rackSafetyPollTicks;
     public final IntValue defaultStagingProcessIntervalTicks;
+    public final IntValue busyIntervalDivisor;
+    public final IntValue idleBackoffMaxMultiplier;
+    public final IntValue networkSummaryCacheTicks;
+    public final BooleanValue changeDrivenSnapshots;
+    public final IntValue snapshotSafetyTimeoutTicks;
+    public final IntValue cacheStatsLogIntervalTicks;
+    public final IntValue itemKeyIdleEvictTicks;
+    public final IntValue broadcastBackoffBaseTicks;
+    public final IntValue broadcastBackoffMaxTicks;
+    public final IntValue broadcastFailureThreshold;
 
     // === Building Levels ===
     public final IntValue stockTickerRequiredLevel;
@@ -29,6 +42,11 @@ public final class ServerConfig {
 
     // === Request System ===
     public final IntValue resolverPriority;
+    public final BooleanValue minimizeDeliveryTrips;
+    public final IntValue slotReservationTtlTicks;
+    public final BooleanValue targetedReEvaluation;
+    public final IntValue hutBalanceQueueWeight;
+    public final BooleanValue negativeResolveCache;
 
     // === AI/Movement ===
     public final IntValue stateMachineTickRate;
@@ -116,11 +134,31 @@ public final class ServerConfig {
                 .comment("Interval for inventory signature refresh checks (ticks).", "Default 40 = 2 seconds.")
                 .defineInRange("defaultInvSigIntervalTicks", 40, 10, 200);
 
+        changeDrivenRackChecks = builder
+                .comment("Only rehash racks that reported a content change since the last check.",
+                        "Changes that bypass the rack are picked up when rackSafetyPollTicks expires.")
+                .define("changeDrivenRackChecks", true);
+
+        rackSafetyPollTicks = builder
+                .comment("With change-driven rack checks, maximum time between full rack rehashes (ticks).",
+                        "Default 1200 = 1 minute.")
+                .defineInRange("rackSafetyPollTicks", 1200, 200, 72000);
+
         defaultStagingProcessIntervalTicks = builder
                 .comment("Interval for staging process when no skill manager available (ticks).",
                         "Default 60 = 3 seconds.")
                 .defineInRange("defaultStagingProcessIntervalTicks", 60, 10, 300);
 
+        busyIntervalDivisor = builder
+                .comment("Snapshot and staging intervals are divided by this while orders are in flight.",
+                        "Never goes below the skill minimum. 1 = disabled.")
+                .defineInRange("busyIntervalDivisor", 2, 1, 8);
+
+        idleBackoffMaxMultiplier = builder
+                .comment("Snapshot and staging intervals double on each idle run, up to this multiple.",
+                        "Never goes above the interval at skill level 0. 1 = disabled.")
+                .defineInRange("idleBackoffMaxMultiplier", 4, 1, 16);
+
         builder.pop(); // workerCycle
 
         // Order Processing subgroup
@@ -134,6 +172,11 @@ public final class ServerConfig {
                 .comment("Window for batching multiple requests together (ticks).", "Default 60 = 3 seconds.")
                 .defineInRange("bufferWindowTicks", 60, 10, 300);
 
+        maxStacksPerPackage = builder
+                .comment("Maximum item stacks bundled into one staging package.",
+                        "Buffered requests beyond this are split into separate packages. Default 9 = one Create box.")
+                .defineInRange("maxStacksPerPackage", 9, 1, 9);
+
         defaultDeliveryTicks = builder
                 .comment("Default assumed delivery time for ETA calculations (ticks).", "Default 1200 = 1 minute.")
                 .defineInRange("defaultDeliveryTicks", 1200, 100, 2400);
@@ -155,6 +198,55 @@ public final class ServerConfig {
 
         builder.pop(); // displayTiming
 
+        // Network cache subgroup
+        builder.comment("Create network summary caching").push("networkCache");
+
+        networkSummaryCacheTicks = builder
+                .comment("How long a Create network summary is reused before it is fetched again (ticks).",
+                        "Shared by every Stock Keeper on the server. Default 1 = once per tick.")
+                .defineInRange("networkSummaryCacheTicks", 1, 1, 200);
+
+        changeDrivenSnapshots = builder
+                .comment("Only rebuild stock snapshots when Create reports package traffic on a network.",
+                        "Other inventory changes are picked up when snapshotSafetyTimeoutTicks expires.")
+                .define("changeDrivenSnapshots", false);
+
+        snapshotSafetyTimeoutTicks = builder
+                .comment("With change-driven snapshots, maximum time between forced rebuilds (ticks).",
+                        "Default 1200 = 1 minute.")
+                .defineInRange("snapshotSafetyTimeoutTicks", 1200, 100, 12000);
+
+        cacheStatsLogIntervalTicks = builder
+                .comment("Interval for logging cache hit and miss counts (ticks). 0 = never.",
+                        "Each report covers the interval since the previous one.")
+                .defineInRange("cacheStatsLogIntervalTicks", 0, 0, 72000);
+
+        itemKeyIdleEvictTicks = builder
+                .comment("Item keys for NBT variants (damaged, renamed or enchanted items) that are not seen in any",
+                        "network summary or rack for this long are dropped (ticks). Default 72000 = 1 hour.")
+                .defineInRange("itemKeyIdleEvictTicks", 72000, 24000, 1728000);
+
+        builder.pop(); // networkCache
+
+        // Broadcast backoff subgroup
+        builder.comment("Backoff for failed Create package broadcasts").push("broadcastBackoff");
+
+        broadcastBackoffBaseTicks = builder
+                .comment("Wait after a network's breaker opens (ticks). Doubles with each further failure.",
+                        "Default 20 = 1 second.")
+                .defineInRange("broadcastBackoffBaseTicks", 20, 1, 1200);
+
+        broadcastBackoffMaxTicks = builder
+                .comment("Longest wait between broadcast attempts to a failing network (ticks).",
+                        "Default 1200 = 1 minute.")
+                .defineInRange("broadcastBackoffMaxTicks", 1200, 20, 12000);
+
+        broadcastFailureThreshold = builder
+                .comment("Failed broadcasts in a row before a network is skipped and only probed after a wait.")
+                .defineInRange("broadcastFailureThreshold", 3, 1, 20);
+
+        builder.pop(); // broadcastBackoff
+
         builder.pop(); // timing
 
         // General Settings (consolidated from buildingLevels, limits, requestSystem)
@@ -176,6 +268,27 @@ public final class ServerConfig {
         builder.comment("Request System Settings").push("requestSystem");
         resolverPriority = builder.comment("Priority for SupplyLines resolvers in the MineColonies request system.",
                 "Lower values = higher priority.").defineInRange("resolverPriority", 80, 1, 200);
+        minimizeDeliveryTrips = builder
+                .comment("Choose rack slots so a request needs as few courier deliveries as possible,",
+                        "preferring racks close to the requester. If false, slots are taken in rack order.")
+                .define("minimizeDeliveryTrips", true);
+        slotReservationTtlTicks = builder
+                .comment("How long rack items stay reserved for a request or courier delivery (ticks).",
+                        "Reservations are normally released when the delivery completes; this is a safety net.",
+                        "Default 6000 = 5 minutes.")
+                .defineInRange("slotReservationTtlTicks", 6000, 200, 72000);
+        targetedReEvaluation = builder
+                .comment("When racks or network stock change, only re-evaluate requests for the changed items.",
+                        "If false, every open SupplyLines request in the colony is re-evaluated.")
+                .define("targetedReEvaluation", true);
+        hutBalanceQueueWeight = builder
+                .comment("When several Stock Keepers share a network, requests go to the hut with the lowest score:",
+                        "distance to the requester in blocks plus this weight per staging request already queued.")
+                .defineInRange("hutBalanceQueueWeight", 16, 0, 256);
+        negativeResolveCache = builder
+                .comment("Remember requests the Stock Keeper could not resolve until its racks or network stock change.",
+                        "Repeated checks for the same request are then answered without scanning racks or the network.")
+                .define("negativeResolveCache", true);
         builder.pop(); // requestSystem
 
         builder.pop(); // general
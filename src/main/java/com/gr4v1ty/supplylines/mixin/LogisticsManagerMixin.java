@@ -0,0 +1,24 @@
+package com.gr4v1ty.supplylines.mixin;
+
+import com.gr4v1ty.supplylines.compat.create.LogisticsChangeTracker;
+import com.simibubi.create.content.logistics.packager.IdentifiedInventory;
+import com.simibubi.create.content.logistics.packagerLink.LogisticallyLinkedBehaviour;
+import com.simibubi.create.content.logistics.packagerLink.LogisticsManager;
+import com.simibubi.create.content.logistics.stockTicker.PackageOrderWithCrafts;
+import java.util.UUID;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(value = {LogisticsManager.class}, remap = false)
+public abstract class LogisticsManagerMixin {
+    @Inject(method = {"broadcastPackageRequest"}, at = {@At(value = "RETURN")}, require = 0, remap = false)
+    private static void supplylines$markNetworkChanged(UUID freqId, LogisticallyLinkedBehaviour.RequestType type,
+            PackageOrderWithCrafts order, IdentifiedInventory ignoredHandler, String address,
+            CallbackInfoReturnable<Boolean> cir) {
+        if (freqId != null && Boolean.TRUE.equals(cir.getReturnValue())) {
+            LogisticsChangeTracker.markDirty(freqId);
+        }
+    }
+}
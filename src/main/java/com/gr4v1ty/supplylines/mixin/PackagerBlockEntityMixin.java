@@ -0,0 +1,20 @@
+package com.gr4v1ty.supplylines.mixin;
+
+import com.gr4v1ty.supplylines.compat.create.LogisticsChangeTracker;
+import com.simibubi.create.content.logistics.packager.PackagerBlockEntity;
+import net.minecraft.world.item.ItemStack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(value = {PackagerBlockEntity.class}, remap = false)
+public abstract class PackagerBlockEntityMixin {
+    @Inject(method = {"unwrapBox"}, at = {@At(value = "RETURN")}, require = 0, remap = false)
+    private void supplylines$markNetworksChanged(ItemStack box, boolean simulate,
+            CallbackInfoReturnable<Boolean> cir) {
+        if (!simulate && Boolean.TRUE.equals(cir.getReturnValue())) {
+            LogisticsChangeTracker.markPackagerDirty((PackagerBlockEntity) (Object) this);
+        }
+    }
+}
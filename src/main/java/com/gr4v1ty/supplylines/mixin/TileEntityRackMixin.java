@@ -0,0 +1,16 @@
+package com.gr4v1ty.supplylines.mixin;
+
+import com.gr4v1ty.supplylines.util.inventory.RackChangeTracker;
+import com.minecolonies.core.tileentities.TileEntityRack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(value = {TileEntityRack.class})
+public abstract class TileEntityRackMixin {
+    @Inject(method = {"setChanged()V"}, at = {@At(value = "HEAD")}, require = 0)
+    private void supplylines$notifyRackChanged(CallbackInfo ci) {
+        RackChangeTracker.onChanged((TileEntityRack) (Object) this);
+    }
+}
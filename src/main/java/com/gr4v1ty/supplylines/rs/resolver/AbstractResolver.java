@@ -3,6 +3,9 @@ package com.gr4v1ty.supplylines.rs.resolver;
 import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 import com.gr4v1ty.supplylines.colony.buildings.BuildingStockKeeper;
+import com.gr4v1ty.supplylines.colony.manager.NegativeResolveCache;
+import com.gr4v1ty.supplylines.colony.manager.StockKeeperCoordinator;
+import com.gr4v1ty.supplylines.config.ModConfig;
 import com.gr4v1ty.supplylines.rs.util.DeliveryPlanning;
 import com.minecolonies.api.colony.requestsystem.location.ILocation;
 import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
@@ -17,7 +20,6 @@ import com.minecolonies.api.colony.requestsystem.token.StandardToken;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
@@ -35,7 +37,6 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractResolver<T extends IRequestable> implements IRequestResolver<T> {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractResolver.class);
     private static final Set<IToken<?>> pendingStagingRequests = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private static final Map<IToken<?>, List<DeliveryPlanning.Pick>> reservedPicks = new ConcurrentHashMap<>();
 
     protected final IToken<UUID> id;
     protected final ILocation location;
@@ -127,29 +128,63 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
                     request.getId().toString(), request.getRequester().getClass().getSimpleName());
             return false;
         }
-        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(request);
+        BuildingStockKeeper building = this.getBuilding(manager);
+        NegativeResolveCache.Stamp stamp = null;
+        if (building != null) {
+            // Re-evaluated when the items it wants change, whatever the answer now
+            building.getOpenRequests().track(request);
+            if (ModConfig.SERVER.negativeResolveCache.get()) {
+                stamp = building.getResolveStamp();
+                if (building.getNegativeResolves().isKnownUnresolvable(request.getId(), stamp)) {
+                    LOGGER.debug("{} canResolveRequest: {} still unresolvable (cached)", LogTags.ORDERING,
+                            request.getId());
+                    return false;
+                }
+            }
+        }
+        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(manager, request);
         if (this.picksSatisfyRequest(picks, request)) {
             return true;
         }
-        BuildingStockKeeper building = this.getBuilding(manager);
         if (building != null) {
             boolean hasStockTicker = building.hasStockTicker();
-            if (building.getBuildingLevel() >= BuildingStockKeeper.getStockTickerRequiredLevel() && hasStockTicker) {
+            if (building.canStageFromNetwork()) {
                 boolean availableInNetwork = this.isAvailableInNetwork(building, request);
                 LOGGER.debug("{} canResolveRequest: isAvailableInNetwork={}", LogTags.ORDERING, availableInNetwork);
                 if (availableInNetwork) {
-                    return true;
+                    // Not cached: the preferred hut depends on the other huts' queues
+                    return this.isPreferredHut(building, request);
                 }
             } else {
                 LOGGER.debug("{} canResolveRequest: Level 4+ requirements not met - level={}, hasStockTicker={}",
                         LogTags.ORDERING, building.getBuildingLevel(), hasStockTicker);
             }
+            if (stamp != null) {
+                building.getNegativeResolves().markUnresolvable(request.getId(), stamp);
+            }
         } else {
             LOGGER.warn("{} canResolveRequest: Building is NULL!", LogTags.ORDERING);
         }
         return false;
     }
 
+    /**
+     * Whether this hut should take a request that only the network can fill,
+     * rather than another hut on the same network.
+     */
+    private boolean isPreferredHut(BuildingStockKeeper building, IRequest<? extends T> request) {
+        ILocation requesterLoc = request.getRequester().getLocation();
+        BuildingStockKeeper preferred = StockKeeperCoordinator.forColony(building.getColony()).preferredHut(building,
+                requesterLoc != null ? requesterLoc.getInDimensionLocation() : null,
+                other -> this.isAvailableInNetwork(other, request));
+        if (preferred != building) {
+            LOGGER.debug("{} canResolveRequest: {} left to Stock Keeper at {}", LogTags.ORDERING, request.getId(),
+                    preferred.getPosition().toShortString());
+            return false;
+        }
+        return true;
+    }
+
     @Nullable
     public final List<IToken<?>> attemptResolveRequest(@NotNull IRequestManager manager,
             @NotNull IRequest<? extends T> request) {
@@ -163,7 +198,7 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
             LOGGER.warn("{} No intake destination for requester: {}", LogTags.DELIVERY, request.getRequester());
             return ImmutableList.of();
         }
-        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(request);
+        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(manager, request);
         int requiredCount = this.getRequiredCount(request);
         int pickedCount = picks != null ? picks.stream().mapToInt(p -> p.count).sum() : 0;
         LOGGER.debug("{} attemptResolve {} - dest={}, picks={} (have {} need {})", LogTags.DELIVERY, request.getId(),
@@ -176,12 +211,15 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
             return ImmutableList.of();
         }
 
-        if (pendingStagingRequests.contains(request.getId())) {
+        BuildingStockKeeper building = this.getBuilding(manager);
+        // Staging restored from save data is only known to the building
+        if (pendingStagingRequests.contains(request.getId())
+                || (building != null && building.hasPendingStagingRequest(request.getId()))) {
+            pendingStagingRequests.add(request.getId());
             LOGGER.debug("{} attemptResolve {} - returning null (staging pending)", LogTags.ORDERING, request.getId());
             return null;
         }
 
-        BuildingStockKeeper building = this.getBuilding(manager);
         if (building != null && building.getBuildingLevel() >= BuildingStockKeeper.getStockTickerRequiredLevel()
                 && building.hasStockTicker()) {
             boolean availableInNetwork = this.isAvailableInNetwork(building, request);
@@ -217,14 +255,16 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
         ILocation dest = this.getIntakeLocation(completedRequest.getRequester());
         if (dest == null) {
             LOGGER.error("{} No intake destination for requester in getFollowupRequestForCompletion", LogTags.DELIVERY);
-            reservedPicks.remove(completedRequest.getId());
             return Collections.emptyList();
         }
 
-        List<DeliveryPlanning.Pick> picks = reservedPicks.remove(completedRequest.getId());
-        if (picks == null || picks.isEmpty()) {
-            picks = this.pickFromRacks(completedRequest);
+        // The picks claimed for this request when it was accepted
+        BuildingStockKeeper building = this.getBuilding(manager);
+        if (building != null) {
+            building.getOpenRequests().untrack(completedRequest.getId());
+            building.getNegativeResolves().forget(completedRequest.getId());
         }
+        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(manager, completedRequest);
         if (picks == null || picks.isEmpty()) {
             LOGGER.error("{} Items no longer available for resolved request {} - completing without delivery",
                     LogTags.FULFILLMENT, completedRequest.getId());
@@ -266,6 +306,10 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
                 IRequest<?> deliveryRequest = manager.getRequestForToken(requestToken);
                 if (deliveryRequest != null) {
                     deliveries.add(deliveryRequest);
+                    if (building != null) {
+                        // Hold the slot until the courier's delivery completes
+                        building.getSlotClaims().claim(requestToken, List.of(pick));
+                    }
                     LOGGER.debug("{} Created delivery child {} for parent {}", LogTags.DELIVERY, requestToken,
                             completedRequest.getId());
                 }
@@ -275,9 +319,9 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
         }
 
         pendingStagingRequests.remove(completedRequest.getId());
-        BuildingStockKeeper building = this.getBuilding(manager);
         if (building != null) {
             building.cancelStagingRequest(completedRequest.getId());
+            building.getBatchPlanner().release(completedRequest.getId());
         }
 
         this.awardSkillXP(manager, completedRequest);
@@ -341,10 +385,21 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
         return c != null ? c.intakeLocator().apply(requester) : null;
     }
 
+    /**
+     * Gets the rack picks for a request, as allocated by the building's batch
+     * planner so that concurrent requests never share stock.
+     */
     @Nullable
-    protected List<DeliveryPlanning.Pick> pickFromRacks(IRequest<? extends T> request) {
+    protected List<DeliveryPlanning.Pick> pickFromRacks(IRequestManager manager, IRequest<? extends T> request) {
         ResolverComponents<T> c = getComponents();
-        return c != null ? c.picker().apply(request) : null;
+        if (c == null) {
+            return null;
+        }
+        BuildingStockKeeper building = this.getBuilding(manager);
+        if (building == null) {
+            return c.picker().apply(request);
+        }
+        return building.getBatchPlanner().picksFor(request, c.picker(), this::picksSatisfyRequest);
     }
 
     protected boolean verifyDelivery(IRequestManager manager, ILocation dest, IRequest<? extends T> request) {
@@ -368,11 +423,11 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
             return;
         }
 
-        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(request);
+        List<DeliveryPlanning.Pick> picks = this.pickFromRacks(manager, request);
         String desc = this.getRequestDescription(request);
         if (picks != null && !picks.isEmpty()) {
-            reservedPicks.put(request.getId(), new ArrayList<>(picks));
-            LOGGER.info("{} Accepted: {} - reserved {} picks", LogTags.ORDERING, desc, picks.size());
+            LOGGER.info("{} Accepted: {} - reserved {} courier trips from {} racks", LogTags.ORDERING, desc,
+                    picks.size(), DeliveryPlanning.countSources(picks));
         } else {
             LOGGER.info("{} Accepted: {} - awaiting staging from network", LogTags.ORDERING, desc);
         }
@@ -387,12 +442,15 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
         BuildingStockKeeper building = this.getBuilding(m);
         if (building != null) {
             building.cancelStagingRequest(r.getId());
+            building.getBatchPlanner().release(r.getId());
+            building.getOpenRequests().untrack(r.getId());
+            building.getNegativeResolves().forget(r.getId());
         }
         pendingStagingRequests.remove(r.getId());
-        reservedPicks.remove(r.getId());
     }
 
     public void onRequestedRequestComplete(@NotNull IRequestManager m, @NotNull IRequest<?> r) {
+        this.releaseSlotClaim(m, r);
         Object requestable = r.getRequest();
         if (requestable instanceof Delivery delivery) {
             ItemStack stack = delivery.getStack();
@@ -404,6 +462,7 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
     }
 
     public void onRequestedRequestCancelled(@NotNull IRequestManager m, @NotNull IRequest<?> r) {
+        this.releaseSlotClaim(m, r);
         Object requestable = r.getRequest();
         if (requestable instanceof Delivery delivery) {
             ItemStack stack = delivery.getStack();
@@ -416,6 +475,13 @@ public abstract class AbstractResolver<T extends IRequestable> implements IReque
         }
     }
 
+    private void releaseSlotClaim(IRequestManager m, IRequest<?> child) {
+        BuildingStockKeeper building = this.getBuilding(m);
+        if (building != null && building.getSlotClaims().release(child.getId())) {
+            building.getBatchPlanner().invalidate();
+        }
+    }
+
     @NotNull
     public MutableComponent getRequesterDisplayName(@NotNull IRequestManager m, @NotNull IRequest<?> r) {
         return Component.literal("Stock Keeper (SupplyLines)");
@@ -9,8 +9,11 @@ import com.minecolonies.api.colony.requestsystem.requestable.IRequestable;
 import com.minecolonies.api.colony.requestsystem.requestable.Stack;
 import com.minecolonies.api.colony.requestsystem.token.IToken;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import net.minecraft.core.BlockPos;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +40,19 @@ public final class DeliveryPlanning {
         return ImmutableList.copyOf(out);
     }
 
+    /**
+     * Counts the distinct source positions of a pick list. Each pick becomes
+     * one courier delivery, so together with the pick count this is the
+     * expected courier workload of a request.
+     */
+    public static int countSources(@NotNull List<Pick> picks) {
+        Set<BlockPos> sources = new HashSet<>();
+        for (Pick p : picks) {
+            sources.add(p.source.getInDimensionLocation());
+        }
+        return sources.size();
+    }
+
     public static final class Pick {
         @NotNull
         public final ILocation source;
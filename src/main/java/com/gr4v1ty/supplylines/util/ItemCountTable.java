@@ -0,0 +1,209 @@
+package com.gr4v1ty.supplylines.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing table mapping non-negative item key ids to long counts. Used
+ * for stock snapshots that are rebuilt every few ticks, so it never boxes
+ * values and keeps its backing arrays across {@link #clear()} calls. Iterate with
+ * {@link #slotCount()}, {@link #isUsed(int)}, {@link #keyAt(int)} and
+ * {@link #valueAt(int)} to avoid allocating an iterator.
+ */
+public final class ItemCountTable {
+    private static final int EMPTY = -1;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] keys;
+    private long[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public ItemCountTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ItemCountTable(int expectedSize) {
+        this.allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the count stored for an id.
+     *
+     * @param id
+     *            the item key id
+     * @return the count, or 0 if the id is not present
+     */
+    public long get(int id) {
+        int slot = this.findSlot(id);
+        return slot >= 0 ? this.values[slot] : 0L;
+    }
+
+    public boolean containsKey(int id) {
+        return this.findSlot(id) >= 0;
+    }
+
+    /**
+     * Sets the count for an id, replacing any existing value.
+     */
+    public void put(int id, long value) {
+        int slot = this.insertionSlot(id);
+        this.values[slot] = value;
+    }
+
+    /**
+     * Adds a delta to the count for an id, inserting it with the delta if absent.
+     *
+     * @return the new count
+     */
+    public long addTo(int id, long delta) {
+        int slot = this.insertionSlot(id);
+        return this.values[slot] += delta;
+    }
+
+    /**
+     * Removes an id from the table.
+     *
+     * @return the removed count, or 0 if the id was not present
+     */
+    public long remove(int id) {
+        int slot = this.findSlot(id);
+        if (slot < 0) {
+            return 0L;
+        }
+        long old = this.values[slot];
+        this.shiftKeys(slot);
+        --this.size;
+        return old;
+    }
+
+    /**
+     * Removes all entries while keeping the backing arrays for reuse.
+     */
+    public void clear() {
+        if (this.size == 0) {
+            return;
+        }
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /** Number of slots to iterate over when walking the table. */
+    public int slotCount() {
+        return this.keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return this.keys[slot] != EMPTY;
+    }
+
+    public int keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    public long valueAt(int slot) {
+        return this.values[slot];
+    }
+
+    private int findSlot(int id) {
+        int slot = mix(id) & this.mask;
+        int k;
+        while ((k = this.keys[slot]) != EMPTY) {
+            if (k == id) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private int insertionSlot(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Item ids must be non-negative: " + id);
+        }
+        int slot = mix(id) & this.mask;
+        int k;
+        while ((k = this.keys[slot]) != EMPTY) {
+            if (k == id) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.size + 1 > this.resizeThreshold) {
+            this.rehash(this.keys.length << 1);
+            return this.insertionSlot(id);
+        }
+        this.keys[slot] = id;
+        this.values[slot] = 0L;
+        ++this.size;
+        return slot;
+    }
+
+    /** Backward-shift deletion so probe sequences stay intact. */
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        int k;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & this.mask;
+            while (true) {
+                if ((k = this.keys[pos]) == EMPTY) {
+                    this.keys[last] = EMPTY;
+                    return;
+                }
+                slot = mix(k) & this.mask;
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & this.mask;
+            }
+            this.keys[last] = k;
+            this.values[last] = this.values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        this.allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            int k = oldKeys[i];
+            if (k == EMPTY) {
+                continue;
+            }
+            int slot = mix(k) & this.mask;
+            while (this.keys[slot] != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[slot] = k;
+            this.values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (capacity * 3) >>> 2;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int needed = Math.max(DEFAULT_CAPACITY, (int) Math.ceil(expectedSize / 0.75));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static int mix(int x) {
+        int h = x * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
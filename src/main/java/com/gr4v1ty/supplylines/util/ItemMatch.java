@@ -1,38 +1,285 @@
 package com.gr4v1ty.supplylines.util;
 
+import com.gr4v1ty.supplylines.config.ModConfig;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.ItemLike;
 import net.minecraftforge.registries.ForgeRegistries;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class ItemMatch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ItemMatch.class);
+
     private ItemMatch() {
     }
 
-    public static class ItemStackKey {
+    /**
+     * Canonical key for an item plus its NBT. Keys are interned, so two keys are
+     * equal only if they are the same instance, and each key carries a dense
+     * numeric id for use in primitive tables such as {@link ItemCountTable}.
+     * Looking up a stack without NBT, or one whose variant is already known,
+     * allocates nothing. The pool is only touched from the server thread.
+     * <p>
+     * Damaged, renamed and enchanted items each get their own NBT variant, so
+     * variants nothing has used for {@code itemKeyIdleEvictTicks} are evicted
+     * and {@link #byId(int)} returns null for them. An evicted key that is still
+     * held somewhere, e.g. by an order, claim or staging request, is only weakly
+     * remembered and comes back as the same instance when its stack is seen
+     * again, so identity equality keeps holding. Its id is recycled once the key
+     * has been collected and a further idle period has passed, which gives count
+     * tables holding the bare id time to be rebuilt. Plain keys are bounded by
+     * the item registry and are kept.
+     */
+    public static final class ItemStackKey {
+        private static final Map<Item, Family> FAMILIES = new IdentityHashMap<>();
+        private static final List<ItemStackKey> BY_ID = new ArrayList<>();
+        private static final ReferenceQueue<ItemStackKey> COLLECTED = new ReferenceQueue<>();
+        private static final ArrayDeque<FreedId> QUARANTINED = new ArrayDeque<>();
+        private static final ArrayDeque<Integer> FREE_IDS = new ArrayDeque<>();
+        private static long clock;
+        private static long lastSweep;
+
         private final Item item;
+        @Nullable
+        private final CompoundTag tag;
         private final int hash;
+        private final int id;
+        @Nullable
+        private ItemStack prototype;
+        private long lastUsed;
 
-        public ItemStackKey(ItemStack stack) {
-            this.item = stack.getItem();
-            this.hash = Objects.hashCode(this.item);
+        private ItemStackKey(Item item, @Nullable CompoundTag tag, int tagHash, int id) {
+            this.item = item;
+            this.tag = tag;
+            this.hash = 31 * Objects.hashCode(item) + tagHash;
+            this.id = id;
+            this.lastUsed = clock;
         }
 
-        public ItemStack toStack() {
-            return new ItemStack((ItemLike) this.item);
+        /**
+         * Gets the canonical key for a stack, interning it if this item/NBT
+         * combination has not been seen before.
+         */
+        public static ItemStackKey of(ItemStack stack) {
+            CompoundTag stackTag = stack.getTag();
+            Family family = familyOf(stack.getItem());
+            if (stackTag == null || stackTag.isEmpty()) {
+                return family.plain;
+            }
+            ItemStackKey existing = family.find(stackTag);
+            if (existing != null) {
+                return existing;
+            }
+            CompoundTag tag = stackTag.copy();
+            ItemStackKey key = new ItemStackKey(stack.getItem(), tag, tag.hashCode(), nextId());
+            BY_ID.set(key.id, key);
+            family.variants.put(tag, key);
+            return key;
         }
 
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
+        /**
+         * Gets the canonical key for an item without NBT.
+         */
+        public static ItemStackKey of(Item item) {
+            return familyOf(item).plain;
+        }
+
+        /**
+         * Looks up the key for a stack without interning it.
+         *
+         * @return the key, or null if this item/NBT combination was never interned
+         */
+        @Nullable
+        public static ItemStackKey find(ItemStack stack) {
+            Family family = FAMILIES.get(stack.getItem());
+            if (family == null) {
+                return null;
+            }
+            CompoundTag stackTag = stack.getTag();
+            if (stackTag == null || stackTag.isEmpty()) {
+                return family.plain;
+            }
+            return family.find(stackTag);
+        }
+
+        /**
+         * Gets the key with the given dense id.
+         *
+         * @return the key, or null if it was evicted
+         */
+        @Nullable
+        public static ItemStackKey byId(int id) {
+            ItemStackKey key = BY_ID.get(id);
+            if (key != null) {
+                // Still held in someone's count table
+                key.lastUsed = clock;
+            }
+            return key;
+        }
+
+        /**
+         * Gets every interned key for an item: the plain key first, then any NBT
+         * variants seen so far.
+         */
+        public static List<ItemStackKey> variantsOf(Item item) {
+            Family family = FAMILIES.get(item);
+            if (family == null) {
+                return Collections.emptyList();
+            }
+            List<ItemStackKey> keys = new ArrayList<>(family.variants.size() + 1);
+            keys.add(family.plain);
+            keys.addAll(family.variants.values());
+            return keys;
+        }
+
+        /**
+         * Advances the pool clock and evicts idle NBT variants every quarter of
+         * {@code itemKeyIdleEvictTicks}. Called every server tick.
+         *
+         * @param now
+         *            current server tick
+         */
+        public static void sweepIfDue(long now) {
+            clock = now;
+            long idleTicks = ModConfig.SERVER.itemKeyIdleEvictTicks.get();
+            if (now - lastSweep < idleTicks / 4) {
+                return;
+            }
+            lastSweep = now;
+            int evicted = 0;
+            for (Family family : FAMILIES.values()) {
+                Iterator<ItemStackKey> it = family.variants.values().iterator();
+                while (it.hasNext()) {
+                    ItemStackKey key = it.next();
+                    if (now - key.lastUsed > idleTicks) {
+                        it.remove();
+                        BY_ID.set(key.id, null);
+                        family.evicted.put(key.tag, new EvictedKey(key, family));
+                        ++evicted;
+                    }
+                }
+            }
+            int freed = recycleIds(now, idleTicks);
+            if (evicted > 0 || freed > 0) {
+                LOGGER.debug("{} Evicted {} idle item keys, recycled {} ids", LogTags.INVENTORY, evicted, freed);
+            }
+        }
+
+        /**
+         * Quarantines the ids of evicted keys that have been collected and frees
+         * those whose quarantine has run out.
+         *
+         * @return number of ids made available for reuse
+         */
+        private static int recycleIds(long now, long idleTicks) {
+            EvictedKey ref;
+            while ((ref = (EvictedKey) COLLECTED.poll()) != null) {
+                if (ref.family.evicted.get(ref.tag) == ref) {
+                    ref.family.evicted.remove(ref.tag);
+                }
+                QUARANTINED.add(new FreedId(ref.id, now + idleTicks));
+            }
+            int freed = 0;
+            while (!QUARANTINED.isEmpty() && QUARANTINED.peekFirst().freeAt() <= now) {
+                FREE_IDS.add(QUARANTINED.pollFirst().id());
+                ++freed;
+            }
+            return freed;
+        }
+
+        /**
+         * Drops the interning pool. Only safe once nothing holds keys or key ids
+         * any more, i.e. when the server stops.
+         */
+        public static void clearPool() {
+            FAMILIES.clear();
+            BY_ID.clear();
+            while (COLLECTED.poll() != null) {
+                // Stale references to the old pool
+            }
+            QUARANTINED.clear();
+            FREE_IDS.clear();
+            clock = 0L;
+            lastSweep = 0L;
+        }
+
+        private static Family familyOf(Item item) {
+            Family family = FAMILIES.get(item);
+            if (family == null) {
+                ItemStackKey plain = new ItemStackKey(item, null, 0, nextId());
+                BY_ID.set(plain.id, plain);
+                family = new Family(plain);
+                FAMILIES.put(item, family);
+            }
+            return family;
+        }
+
+        /**
+         * Takes a recycled id if one is free, otherwise appends a new slot.
+         */
+        private static int nextId() {
+            Integer free = FREE_IDS.pollFirst();
+            if (free != null) {
+                return free;
             }
-            if (!(obj instanceof ItemStackKey)) {
-                return false;
+            BY_ID.add(null);
+            return BY_ID.size() - 1;
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+        public Item getItem() {
+            return this.item;
+        }
+
+        public boolean hasTag() {
+            return this.tag != null;
+        }
+
+        /**
+         * Creates a new single-item stack for this key.
+         */
+        public ItemStack toStack() {
+            ItemStack stack = new ItemStack((ItemLike) this.item);
+            if (this.tag != null) {
+                stack.setTag(this.tag.copy());
             }
-            ItemStackKey other = (ItemStackKey) obj;
-            return this.item == other.item;
+            return stack;
+        }
+
+        /**
+         * Gets a shared single-item stack for this key, created on first use. It
+         * must be copied before being handed to anything that may modify it.
+         */
+        public ItemStack prototype() {
+            ItemStack stack = this.prototype;
+            if (stack == null) {
+                stack = this.toStack();
+                this.prototype = stack;
+            }
+            return stack;
+        }
+
+        public boolean equals(Object obj) {
+            return this == obj;
         }
 
         public int hashCode() {
@@ -41,7 +288,75 @@ public final class ItemMatch {
 
         public String toString() {
             ResourceLocation key = ForgeRegistries.ITEMS.getKey(this.item);
-            return key != null ? key.toString() : "unknown";
+            String name = key != null ? key.toString() : "unknown";
+            return this.tag != null ? name + this.tag : name;
         }
     }
+
+    /**
+     * All interned keys for one item: the plain key plus NBT variants, hashed
+     * by tag, and weak handles on evicted variants that may still be held.
+     */
+    private static final class Family {
+        private final ItemStackKey plain;
+        private final Map<CompoundTag, ItemStackKey> variants = new LinkedHashMap<>();
+        private final Map<CompoundTag, EvictedKey> evicted = new HashMap<>();
+
+        private Family(ItemStackKey plain) {
+            this.plain = plain;
+        }
+
+        @Nullable
+        private ItemStackKey find(CompoundTag tag) {
+            ItemStackKey key = this.variants.get(tag);
+            if (key == null) {
+                key = this.revive(tag);
+            }
+            if (key != null) {
+                key.lastUsed = clock;
+            }
+            return key;
+        }
+
+        /**
+         * Re-interns an evicted variant that is still held somewhere, so the
+         * holder's instance and id stay canonical.
+         */
+        @Nullable
+        private ItemStackKey revive(CompoundTag tag) {
+            EvictedKey ref = this.evicted.remove(tag);
+            if (ref == null) {
+                return null;
+            }
+            ItemStackKey key = ref.get();
+            if (key == null) {
+                // Collected; the id is queued and recycleIds will find it
+                return null;
+            }
+            ref.clear();
+            this.variants.put(key.tag, key);
+            ItemStackKey.BY_ID.set(key.id, key);
+            return key;
+        }
+    }
+
+    /**
+     * Weak handle on an evicted variant, remembering where it lived so it can
+     * be unlinked and its id recycled once collected.
+     */
+    private static final class EvictedKey extends WeakReference<ItemStackKey> {
+        private final Family family;
+        private final CompoundTag tag;
+        private final int id;
+
+        private EvictedKey(ItemStackKey key, Family family) {
+            super(key, ItemStackKey.COLLECTED);
+            this.family = family;
+            this.tag = key.tag;
+            this.id = key.id;
+        }
+    }
+
+    private record FreedId(int id, long freeAt) {
+    }
 }
@@ -0,0 +1,184 @@
+package com.gr4v1ty.supplylines.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Hierarchical timing wheel keyed on game time. Scheduling is O(1) and
+ * advancing costs O(ticks stepped + entries expired), independent of how many
+ * entries are outstanding. Four levels of 64 slots cover about 9.7 days of game
+ * time; anything further out waits in an overflow list.
+ *
+ * <p>
+ * Entries cannot be cancelled. Callers check on expiry whether the value is
+ * still live (and still due) and reschedule or ignore it, which keeps removal
+ * free for the common case where work finishes before its deadline.
+ *
+ * @param <T>
+ *            scheduled value type
+ */
+public final class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    /** Longer gaps are handled by re-bucketing everything instead of stepping. */
+    private static final long MAX_STEP_TICKS = (long) SLOTS * SLOTS;
+
+    private final Entry<T>[][] wheels;
+    @Nullable
+    private Entry<T> overflow;
+    private long currentTick = Long.MIN_VALUE;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel() {
+        this.wheels = (Entry<T>[][]) new Entry<?>[LEVELS][SLOTS];
+    }
+
+    /**
+     * Schedules a value to expire at the given game tick. Deadlines already in
+     * the past expire on the next {@link #advance}.
+     */
+    public void schedule(T value, long deadlineTick) {
+        Entry<T> entry = new Entry<>(value, deadlineTick);
+        ++this.size;
+        if (this.currentTick == Long.MIN_VALUE) {
+            // Not started yet; placed once the first advance tells us the time
+            this.pushOverflow(entry);
+            return;
+        }
+        this.place(entry, this.currentTick + 1);
+    }
+
+    /**
+     * Advances the wheel to {@code now}, handing every value whose deadline is
+     * at or before {@code now} to the callback. The callback may schedule new
+     * values.
+     */
+    public void advance(long now, Consumer<T> onExpired) {
+        if (this.currentTick == Long.MIN_VALUE || now - this.currentTick > MAX_STEP_TICKS) {
+            this.rebucket(now);
+        } else if (this.size == 0) {
+            this.currentTick = Math.max(this.currentTick, now);
+            return;
+        }
+        while (this.currentTick < now) {
+            this.step(onExpired);
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void clear() {
+        for (Entry<T>[] wheel : this.wheels) {
+            Arrays.fill(wheel, null);
+        }
+        this.overflow = null;
+        this.size = 0;
+    }
+
+    private void step(Consumer<T> onExpired) {
+        ++this.currentTick;
+        int top = 0;
+        while (top < LEVELS && (this.currentTick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            ++top;
+        }
+        if (top == LEVELS) {
+            // Full revolution: overflow entries may now be in range
+            Entry<T> pending = this.overflow;
+            this.overflow = null;
+            this.placeAll(pending, this.currentTick);
+            top = LEVELS - 1;
+        }
+        // Cascade from the highest level down so entries trickle into slots not yet visited
+        for (int level = top; level >= 1; --level) {
+            int slot = (int) ((this.currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Entry<T> cascaded = this.wheels[level][slot];
+            this.wheels[level][slot] = null;
+            this.placeAll(cascaded, this.currentTick);
+        }
+        int slot = (int) (this.currentTick & SLOT_MASK);
+        Entry<T> expired = this.wheels[0][slot];
+        this.wheels[0][slot] = null;
+        while (expired != null) {
+            Entry<T> next = expired.next;
+            --this.size;
+            onExpired.accept(expired.value);
+            expired = next;
+        }
+    }
+
+    /**
+     * Restarts the wheel at {@code now - 1} and re-places every entry, so the
+     * following step fires everything that is already due.
+     */
+    private void rebucket(long now) {
+        Entry<T> all = this.overflow;
+        this.overflow = null;
+        for (Entry<T>[] wheel : this.wheels) {
+            for (int slot = 0; slot < SLOTS; ++slot) {
+                Entry<T> entry = wheel[slot];
+                wheel[slot] = null;
+                while (entry != null) {
+                    Entry<T> next = entry.next;
+                    entry.next = all;
+                    all = entry;
+                    entry = next;
+                }
+            }
+        }
+        this.currentTick = now - 1;
+        this.placeAll(all, now);
+    }
+
+    private void placeAll(@Nullable Entry<T> entry, long minTick) {
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            this.place(entry, minTick);
+            entry = next;
+        }
+    }
+
+    /**
+     * Places an entry by its distance from the current tick. Deadlines before
+     * {@code minTick} are treated as due at {@code minTick}.
+     */
+    private void place(Entry<T> entry, long minTick) {
+        long target = Math.max(entry.deadline, minTick);
+        long delta = target - this.currentTick;
+        for (int level = 0; level < LEVELS; ++level) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                int slot = (int) ((target >>> (SLOT_BITS * level)) & SLOT_MASK);
+                entry.next = this.wheels[level][slot];
+                this.wheels[level][slot] = entry;
+                return;
+            }
+        }
+        this.pushOverflow(entry);
+    }
+
+    private void pushOverflow(Entry<T> entry) {
+        entry.next = this.overflow;
+        this.overflow = entry;
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long deadline;
+        @Nullable
+        private Entry<T> next;
+
+        private Entry(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
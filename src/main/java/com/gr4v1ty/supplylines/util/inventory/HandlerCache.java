@@ -0,0 +1,161 @@
+package com.gr4v1ty.supplylines.util.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraftforge.common.capabilities.ForgeCapabilities;
+import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.items.IItemHandler;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Per-building cache of resolved item handlers. Each position is resolved once
+ * across all faces and keeps one entry per distinct handler, so an inventory
+ * exposed identically on every side is only walked once. An entry is dropped
+ * when any of its capabilities is invalidated (block broken, chunk unloaded),
+ * and positions that leave the building's rack set are dropped on rescan.
+ * <p>
+ * Capabilities outlive cache entries, so the invalidation listener is added
+ * once per capability instance; re-resolving a position does not add another.
+ */
+public final class HandlerCache {
+    /** Faces probed per position, unsided first. */
+    static final Direction[] FACES = new Direction[]{null, Direction.DOWN, Direction.UP, Direction.NORTH,
+            Direction.SOUTH, Direction.WEST, Direction.EAST};
+
+    /**
+     * A distinct handler and the first face that exposes it.
+     *
+     * @param face
+     *            side the handler was first seen through, null for unsided
+     * @param handler
+     *            the resolved handler
+     */
+    public record Side(@Nullable Direction face, IItemHandler handler) {
+    }
+
+    private final Map<BlockPos, Resolved> byPos = new HashMap<>();
+    /** Capabilities that already carry our invalidation listener. */
+    private final Set<LazyOptional<IItemHandler>> listening = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Gets the distinct handlers at a position, unsided first. Positions
+     * without a block entity are not cached.
+     */
+    public List<Side> sidesAt(Level level, BlockPos pos) {
+        Resolved resolved = this.resolve(level, pos);
+        return resolved != null ? resolved.distinct : List.of();
+    }
+
+    /**
+     * Gets the handler a position exposes on one face.
+     *
+     * @param face
+     *            side to query, null for unsided
+     */
+    @Nullable
+    public IItemHandler handlerAt(Level level, BlockPos pos, @Nullable Direction face) {
+        Resolved resolved = this.resolve(level, pos);
+        return resolved != null ? resolved.byFace[faceIndex(face)] : null;
+    }
+
+    /**
+     * Forgets a single position.
+     */
+    public void invalidate(BlockPos pos) {
+        this.byPos.remove(pos);
+    }
+
+    /**
+     * Forgets every position not in the given set. Called on rescan.
+     */
+    public void retainOnly(Collection<BlockPos> positions) {
+        Set<BlockPos> keep = new HashSet<>(positions);
+        this.byPos.keySet().removeIf(pos -> !keep.contains(pos));
+    }
+
+    @Nullable
+    private Resolved resolve(Level level, BlockPos pos) {
+        if (level == null || pos == null) {
+            return null;
+        }
+        Resolved cached = this.byPos.get(pos);
+        if (cached != null) {
+            return cached;
+        }
+        BlockEntity be = level.getBlockEntity(pos);
+        if (be == null) {
+            return null;
+        }
+        BlockPos key = pos.immutable();
+        Resolved resolved = new Resolved();
+        for (int i = 0; i < FACES.length; i++) {
+            LazyOptional<IItemHandler> cap = be.getCapability(ForgeCapabilities.ITEM_HANDLER, FACES[i]);
+            IItemHandler handler = cap.orElse(null);
+            if (handler == null) {
+                continue;
+            }
+            resolved.byFace[i] = handler;
+            if (!containsEqual(resolved.distinct, handler)) {
+                resolved.distinct.add(new Side(FACES[i], handler));
+            }
+            if (!containsSame(resolved.caps, cap)) {
+                resolved.caps.add(cap);
+            }
+        }
+        for (LazyOptional<IItemHandler> cap : resolved.caps) {
+            if (this.listening.add(cap)) {
+                cap.addListener(o -> this.onInvalidated(key, cap));
+            }
+        }
+        this.byPos.put(key, resolved);
+        return resolved;
+    }
+
+    private void onInvalidated(BlockPos pos, LazyOptional<IItemHandler> cap) {
+        this.listening.remove(cap);
+        Resolved current = this.byPos.get(pos);
+        // The position may have been re-resolved to other capabilities since
+        if (current != null && containsSame(current.caps, cap)) {
+            this.byPos.remove(pos);
+        }
+    }
+
+    private static int faceIndex(@Nullable Direction face) {
+        return face == null ? 0 : face.ordinal() + 1;
+    }
+
+    private static boolean containsEqual(List<Side> sides, IItemHandler handler) {
+        for (Side side : sides) {
+            if (side.handler() == handler || side.handler().equals(handler)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsSame(List<LazyOptional<IItemHandler>> caps, LazyOptional<IItemHandler> cap) {
+        for (LazyOptional<IItemHandler> c : caps) {
+            if (c == cap) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Resolved {
+        private final IItemHandler[] byFace = new IItemHandler[FACES.length];
+        private final List<Side> distinct = new ArrayList<>(1);
+        private final List<LazyOptional<IItemHandler>> caps = new ArrayList<>(2);
+    }
+}
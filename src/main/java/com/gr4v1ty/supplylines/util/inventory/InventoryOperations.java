@@ -1,15 +1,11 @@
 package com.gr4v1ty.supplylines.util.inventory;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiPredicate;
-import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraftforge.common.capabilities.ForgeCapabilities;
-import net.minecraftforge.common.util.LazyOptional;
 import net.minecraftforge.items.IItemHandler;
 import net.minecraftforge.items.ItemHandlerHelper;
 
@@ -17,32 +13,6 @@ public final class InventoryOperations {
     private InventoryOperations() {
     }
 
-    public static IItemHandler handlerAt(Level lvl, BlockPos pos) {
-        if (lvl == null || pos == null) {
-            return null;
-        }
-        BlockEntity be = lvl.getBlockEntity(pos);
-        if (be == null) {
-            return null;
-        }
-        LazyOptional<IItemHandler> cap = be.getCapability(ForgeCapabilities.ITEM_HANDLER, null);
-        return cap.orElse(null);
-    }
-
-    public static List<IItemHandler> handlersAt(Level lvl, List<BlockPos> poses) {
-        ArrayList<IItemHandler> list = new ArrayList<IItemHandler>();
-        if (poses == null) {
-            return list;
-        }
-        for (BlockPos p : poses) {
-            IItemHandler h = InventoryOperations.handlerAt(lvl, p);
-            if (h == null)
-                continue;
-            list.add(h);
-        }
-        return list;
-    }
-
     public static IItemHandler getItemHandlerWithFallback(BlockEntity be, Direction preferredFace) {
         IItemHandler handler;
         if (be == null) {
@@ -1,25 +1,25 @@
 package com.gr4v1ty.supplylines.util.inventory;
 
-import java.util.List;
 import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.world.level.Level;
 import net.minecraftforge.items.IItemHandler;
-import net.minecraftforge.registries.ForgeRegistries;
+import org.jetbrains.annotations.Nullable;
 
 public final class InventorySignature {
+    static final long FNV_OFFSET = -3750763034362895579L;
+    private static final long FNV_PRIME = 1099511628211L;
 
     private InventorySignature() {
     }
 
-    public static long computeInventorySignature(Level level, List<BlockPos> rackPositions, IItemHandler stagingHandler,
+    /**
+     * Combines the rack signature (see {@link RackSignatures}) with the staging
+     * inventory and the rack count into the building's inventory signature.
+     */
+    public static long combine(long racksSignature, @Nullable IItemHandler stagingHandler, int rackCount,
             int pendingRequestCount) {
-        long h = -3750763034362895579L;
-        List<IItemHandler> handlers = InventoryOperations.handlersAt(level, rackPositions);
-        for (IItemHandler hnd : handlers) {
-            h = InventorySignature.hashItemHandler(h, hnd);
-        }
+        long h = InventorySignature.hashLong(FNV_OFFSET, racksSignature);
         if (stagingHandler != null) {
             int total = 0;
             for (int i = 0; i < stagingHandler.getSlots(); ++i) {
@@ -31,41 +31,43 @@ public final class InventorySignature {
             h = InventorySignature.hashLong(h, 0xFF00FF00L);
             h = InventorySignature.hashLong(h, (long) total & 0xFFFFFFFFL);
         }
-        h = InventorySignature.hashLong(h, rackPositions != null ? (long) rackPositions.size() : 0L);
+        h = InventorySignature.hashLong(h, rackCount);
         h = InventorySignature.hashLong(h, pendingRequestCount);
         return h;
     }
 
-    private static long hashItemHandler(long h, IItemHandler hnd) {
+    /**
+     * Hashes a handler's contents using numeric item registry ids.
+     */
+    static long hashItemHandler(long h, IItemHandler hnd) {
         int n = hnd.getSlots();
         for (int i = 0; i < n; ++i) {
             ItemStack s = hnd.getStackInSlot(i);
             if (s.isEmpty())
                 continue;
-            ResourceLocation rkey = ForgeRegistries.ITEMS.getKey(s.getItem());
-            String key = "";
-            if (rkey != null) {
-                key = rkey.toString();
-            }
-            for (int c = 0; c < key.length(); ++c) {
-                h ^= (long) key.charAt(c);
-                h *= 1099511628211L;
-            }
-            int cnt = s.getCount();
-            h ^= (long) (cnt & 0xFF);
-            h *= 1099511628211L;
-            h ^= (long) (cnt >>> 8 & 0xFF);
-            h *= 1099511628211L;
+            h = InventorySignature.hashLong(h, Item.getId(s.getItem()));
+            h = InventorySignature.hashLong(h, s.getCount());
             if (!s.hasTag())
                 continue;
             h ^= 0xA5L;
-            h *= 1099511628211L;
+            h *= FNV_PRIME;
         }
         return h;
     }
 
+    /**
+     * Spreads a rack's signature over its position so racks can be combined
+     * with XOR and swapped in and out individually.
+     */
+    static long rackContribution(BlockPos pos, long rackSignature) {
+        long z = pos.asLong() * 0x9E3779B97F4A7C15L ^ rackSignature;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     private static long hashLong(long h, long value) {
         h ^= value;
-        return h *= 1099511628211L;
+        return h *= FNV_PRIME;
     }
 }
@@ -0,0 +1,107 @@
+package com.gr4v1ty.supplylines.util.inventory;
+
+import com.gr4v1ty.supplylines.rs.location.RackLocation;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Chooses which rack slots to take from so that a request turns into as few
+ * courier deliveries as possible. Every chosen slot becomes one delivery, so
+ * the planner minimises the slot count first (largest stacks first), then
+ * prefers racks it already visits, then racks closest to the requester.
+ */
+final class PickPlanner {
+    /**
+     * A live rack slot that matches the request.
+     *
+     * @param entry
+     *            index entry the slot came from
+     * @param location
+     *            the slot as a request system location
+     * @param stack
+     *            current slot contents
+     * @param count
+     *            quantity not yet claimed by other requests
+     * @param distSq
+     *            squared distance from the rack to the requester
+     */
+    record Candidate(RackIndex.Entry entry, RackLocation location, ItemStack stack, int count, double distSq) {
+    }
+
+    private static final Comparator<Candidate> LARGEST_FIRST = Comparator
+            .comparingInt(Candidate::count).reversed().thenComparingDouble(Candidate::distSq);
+
+    private PickPlanner() {
+        // Utility class
+    }
+
+    static Candidate candidate(RackIndex.Entry entry, RackLocation location, ItemStack stack, int count,
+            @Nullable BlockPos origin) {
+        double distSq = origin != null ? origin.distSqr(entry.rackPos()) : 0.0;
+        return new Candidate(entry, location, stack, count, distSq);
+    }
+
+    /**
+     * Plans the slots to take from.
+     *
+     * @param candidates
+     *            all live matching slots
+     * @param needed
+     *            number of items wanted
+     * @return chosen slots in delivery order; may fall short of {@code needed}
+     *         if the racks do not hold enough
+     */
+    static List<Candidate> plan(List<Candidate> candidates, int needed) {
+        if (candidates.isEmpty() || needed <= 0) {
+            return List.of();
+        }
+        List<Candidate> sorted = new ArrayList<>(candidates);
+        sorted.sort(LARGEST_FIRST);
+
+        List<Candidate> chosen = new ArrayList<>();
+        Set<BlockPos> visited = new HashSet<>();
+        int remaining = needed;
+        for (int i = 0; i < sorted.size() && remaining > 0; i++) {
+            Candidate finisher = bestFinisher(sorted, i, remaining, visited);
+            if (finisher != null) {
+                chosen.add(finisher);
+                break;
+            }
+            Candidate next = sorted.get(i);
+            chosen.add(next);
+            visited.add(next.entry().rackPos());
+            remaining -= next.count();
+        }
+        return chosen;
+    }
+
+    /**
+     * Among the unused slots that can cover the rest on their own, picks one
+     * on an already visited rack, else the closest one. Sorted largest first,
+     * so those slots are a prefix of {@code sorted} starting at {@code from}.
+     */
+    @Nullable
+    private static Candidate bestFinisher(List<Candidate> sorted, int from, int remaining, Set<BlockPos> visited) {
+        Candidate best = null;
+        boolean bestVisited = false;
+        for (int i = from; i < sorted.size(); i++) {
+            Candidate c = sorted.get(i);
+            if (c.count() < remaining) {
+                break;
+            }
+            boolean onVisited = visited.contains(c.entry().rackPos());
+            if (best == null || (onVisited && !bestVisited)
+                    || (onVisited == bestVisited && c.distSq() <= best.distSq())) {
+                best = c;
+                bestVisited = onVisited;
+            }
+        }
+        return best;
+    }
+}
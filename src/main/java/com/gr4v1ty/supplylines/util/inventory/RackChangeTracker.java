@@ -0,0 +1,101 @@
+package com.gr4v1ty.supplylines.util.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+/**
+ * Routes rack content changes to the buildings watching those racks, fed by a
+ * mixin on MineColonies' rack block entity (which hut blocks extend). Buildings
+ * register their racks on every rescan and only redo inventory work when they
+ * have been notified. Several buildings can watch the same rack.
+ */
+public final class RackChangeTracker {
+    private static final Map<ResourceKey<Level>, Map<BlockPos, List<Consumer<BlockPos>>>> WATCHED = new HashMap<>();
+    private static final Map<Consumer<BlockPos>, Watch> BY_LISTENER = new IdentityHashMap<>();
+
+    private record Watch(ResourceKey<Level> dimension, Set<BlockPos> positions) {
+    }
+
+    private RackChangeTracker() {
+        // Utility class
+    }
+
+    /**
+     * Replaces the set of positions a listener is notified about.
+     */
+    public static void watch(ResourceKey<Level> dimension, Collection<BlockPos> positions,
+            Consumer<BlockPos> listener) {
+        unwatch(listener);
+        Map<BlockPos, List<Consumer<BlockPos>>> byPos = WATCHED.computeIfAbsent(dimension, k -> new HashMap<>());
+        Set<BlockPos> watched = new HashSet<>();
+        for (BlockPos pos : positions) {
+            BlockPos key = pos.immutable();
+            if (watched.add(key)) {
+                byPos.computeIfAbsent(key, k -> new ArrayList<>(1)).add(listener);
+            }
+        }
+        BY_LISTENER.put(listener, new Watch(dimension, watched));
+    }
+
+    /**
+     * Stops notifying a listener. Called when its building is destroyed.
+     */
+    public static void unwatch(Consumer<BlockPos> listener) {
+        Watch watch = BY_LISTENER.remove(listener);
+        if (watch == null) {
+            return;
+        }
+        Map<BlockPos, List<Consumer<BlockPos>>> byPos = WATCHED.get(watch.dimension());
+        if (byPos == null) {
+            return;
+        }
+        for (BlockPos pos : watch.positions()) {
+            List<Consumer<BlockPos>> listeners = byPos.get(pos);
+            if (listeners == null) {
+                continue;
+            }
+            listeners.removeIf(l -> l == listener);
+            if (listeners.isEmpty()) {
+                byPos.remove(pos);
+            }
+        }
+    }
+
+    /**
+     * Notifies every listener watching a rack that its contents changed.
+     */
+    public static void onChanged(BlockEntity be) {
+        Level level = be.getLevel();
+        if (level == null || level.isClientSide()) {
+            return;
+        }
+        Map<BlockPos, List<Consumer<BlockPos>>> byPos = WATCHED.get(level.dimension());
+        if (byPos == null) {
+            return;
+        }
+        List<Consumer<BlockPos>> listeners = byPos.get(be.getBlockPos());
+        if (listeners == null) {
+            return;
+        }
+        for (int i = 0; i < listeners.size(); ++i) {
+            listeners.get(i).accept(be.getBlockPos());
+        }
+    }
+
+    /** Forgets all watches. Called on server stop. */
+    public static void clear() {
+        WATCHED.clear();
+        BY_LISTENER.clear();
+    }
+}
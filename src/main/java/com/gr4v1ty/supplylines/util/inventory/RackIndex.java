@@ -0,0 +1,162 @@
+package com.gr4v1ty.supplylines.util.inventory;
+
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.items.IItemHandler;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Per-building index of rack contents: item key to the rack slots holding it.
+ * Built with one scan of all racks and reused until it is invalidated, which
+ * the building does whenever its inventory signature changes. Queries only
+ * ever see what was in the racks at the last rebuild, so callers must check
+ * the live slot before acting on an entry (see {@link RackPicker}).
+ */
+public final class RackIndex {
+    /**
+     * A rack slot holding an indexed item.
+     *
+     * @param rackPos
+     *            position of the rack
+     * @param face
+     *            side the slot was first seen through, null for unsided
+     * @param slot
+     *            slot index within that side's handler
+     * @param count
+     *            item count at the last rebuild
+     * @param order
+     *            scan order, used to keep picks in rack order
+     */
+    public record Entry(BlockPos rackPos, @Nullable Direction face, int slot, int count, int order) {
+    }
+
+    private final Map<ItemMatch.ItemStackKey, List<Entry>> byKey = new LinkedHashMap<>();
+    private final List<BlockPos> rackPositions;
+    private final HandlerCache handlers;
+    private final SlotClaims claims = new SlotClaims();
+    private List<BlockPos> indexedRacks = List.of();
+    private boolean stale = true;
+    private long version;
+
+    /**
+     * @param rackPositions
+     *            live view of the building's rack positions
+     * @param handlers
+     *            the building's handler cache
+     */
+    public RackIndex(List<BlockPos> rackPositions, HandlerCache handlers) {
+        this.rackPositions = rackPositions;
+        this.handlers = handlers;
+    }
+
+    /**
+     * Gets the handler cache the index reads through.
+     */
+    public HandlerCache getHandlers() {
+        return this.handlers;
+    }
+
+    /**
+     * Gets the slot quantities already promised to requests.
+     */
+    public SlotClaims getClaims() {
+        return this.claims;
+    }
+
+    /**
+     * Version bumped on every rebuild.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Marks the index for rebuilding on the next query.
+     */
+    public void invalidate() {
+        this.stale = true;
+    }
+
+    public boolean isStale() {
+        return this.stale || !this.indexedRacks.equals(this.rackPositions);
+    }
+
+    /**
+     * Finds all indexed slots whose item matches, in rack scan order. The
+     * matcher is tested once per distinct item key rather than once per slot.
+     * Rebuilds the index first if it is stale.
+     */
+    public List<Entry> find(Level level, Predicate<ItemStack> matcher) {
+        if (this.isStale()) {
+            this.rebuild(level);
+        }
+        List<Entry> matches = null;
+        int matchedKeys = 0;
+        for (Map.Entry<ItemMatch.ItemStackKey, List<Entry>> e : this.byKey.entrySet()) {
+            if (!matcher.test(e.getKey().prototype())) {
+                continue;
+            }
+            if (matches == null) {
+                matches = new ArrayList<>(e.getValue());
+            } else {
+                matches.addAll(e.getValue());
+            }
+            ++matchedKeys;
+        }
+        if (matches == null) {
+            return List.of();
+        }
+        if (matchedKeys > 1) {
+            matches.sort(Comparator.comparingInt(Entry::order));
+        }
+        return matches;
+    }
+
+    /**
+     * Gets the indexed slots of one item key, in rack scan order.
+     */
+    public List<Entry> get(Level level, ItemMatch.ItemStackKey key) {
+        if (this.isStale()) {
+            this.rebuild(level);
+        }
+        List<Entry> entries = this.byKey.get(key);
+        return entries != null ? entries : List.of();
+    }
+
+    /**
+     * Rescans all racks. An inventory exposed on several faces is indexed once,
+     * under the first face that exposes it.
+     */
+    public void rebuild(Level level) {
+        this.byKey.clear();
+        this.indexedRacks = List.copyOf(this.rackPositions);
+        this.stale = false;
+        ++this.version;
+        if (level == null || level.isClientSide()) {
+            return;
+        }
+        int order = 0;
+        for (BlockPos rackPos : this.indexedRacks) {
+            for (HandlerCache.Side side : this.handlers.sidesAt(level, rackPos)) {
+                IItemHandler handler = side.handler();
+                for (int slot = 0; slot < handler.getSlots(); slot++) {
+                    ItemStack inSlot = handler.getStackInSlot(slot);
+                    if (inSlot.isEmpty()) {
+                        continue;
+                    }
+                    this.byKey.computeIfAbsent(ItemMatch.ItemStackKey.of(inSlot), k -> new ArrayList<>())
+                            .add(new Entry(rackPos.immutable(), side.face(), slot, inSlot.getCount(), order++));
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.gr4v1ty.supplylines.util.inventory;
 
+import com.gr4v1ty.supplylines.config.ModConfig;
 import com.gr4v1ty.supplylines.rs.location.RackLocation;
 import com.gr4v1ty.supplylines.rs.util.DeliveryPlanning;
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import com.gr4v1ty.supplylines.util.ItemMatch;
 import com.minecolonies.api.colony.IColony;
 import com.minecolonies.api.colony.requestsystem.requestable.Burnable;
 import com.minecolonies.api.colony.requestsystem.requestable.Food;
@@ -11,28 +14,23 @@ import com.minecolonies.api.colony.requestsystem.requestable.StackList;
 import com.minecolonies.api.colony.requestsystem.requestable.Tool;
 import net.minecraft.world.level.block.entity.FurnaceBlockEntity;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import net.minecraft.core.BlockPos;
-import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.entity.BlockEntity;
-import net.minecraftforge.common.capabilities.ForgeCapabilities;
 import net.minecraftforge.items.IItemHandler;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Utility class for picking items from MineColonies racks to fulfill requests.
  * Uses a generic template method pattern to avoid code duplication across
  * different requestable types (Stack, Tool, RequestTag, StackList, Food).
+ * Pickers query the building's {@link RackIndex} instead of walking every rack
+ * slot on each call.
  */
 public final class RackPicker {
-    private static final Direction[] FACES = new Direction[]{null, Direction.DOWN, Direction.UP, Direction.NORTH,
-            Direction.SOUTH, Direction.WEST, Direction.EAST};
-
     private RackPicker() {
     }
 
@@ -40,42 +38,42 @@ public final class RackPicker {
     // Public API - Type-specific convenience methods
     // -------------------------------------------------------------------------
 
-    public static List<DeliveryPlanning.Pick> pickFromRacks(Level level, IColony colony, List<BlockPos> rackPositions,
-            Stack wanted) {
-        return pickGeneric(level, colony, rackPositions, Math.max(wanted.getCount(), wanted.getMinimumCount()),
+    public static List<DeliveryPlanning.Pick> pickFromRacks(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, Stack wanted) {
+        return pickGeneric(level, colony, index, origin, Math.max(wanted.getCount(), wanted.getMinimumCount()),
                 wanted::matches, (inSlot, take) -> wanted, // Use the original Stack requestable
                 false);
     }
 
-    public static List<DeliveryPlanning.Pick> pickToolFromRacks(Level level, IColony colony,
-            List<BlockPos> rackPositions, Tool wanted) {
-        return pickGeneric(level, colony, rackPositions, 1, // Tools need exactly 1
+    public static List<DeliveryPlanning.Pick> pickToolFromRacks(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, Tool wanted) {
+        return pickGeneric(level, colony, index, origin, 1, // Tools need exactly 1
                 wanted::matches, (inSlot, take) -> new Stack(inSlot, 1, 1), true // Single item mode - return on first
                                                                                  // match
         );
     }
 
-    public static List<DeliveryPlanning.Pick> pickFromRacksByTag(Level level, IColony colony,
-            List<BlockPos> rackPositions, RequestTag wanted) {
-        return pickGeneric(level, colony, rackPositions, Math.max(wanted.getCount(), wanted.getMinimumCount()),
+    public static List<DeliveryPlanning.Pick> pickFromRacksByTag(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, RequestTag wanted) {
+        return pickGeneric(level, colony, index, origin, Math.max(wanted.getCount(), wanted.getMinimumCount()),
                 wanted::matches, (inSlot, take) -> new Stack(inSlot, take, 1), false);
     }
 
-    public static List<DeliveryPlanning.Pick> pickFromRacksByStackList(Level level, IColony colony,
-            List<BlockPos> rackPositions, StackList wanted) {
-        return pickGeneric(level, colony, rackPositions, Math.max(wanted.getCount(), wanted.getMinimumCount()),
+    public static List<DeliveryPlanning.Pick> pickFromRacksByStackList(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, StackList wanted) {
+        return pickGeneric(level, colony, index, origin, Math.max(wanted.getCount(), wanted.getMinimumCount()),
                 wanted::matches, (inSlot, take) -> new Stack(inSlot, take, 1), false);
     }
 
-    public static List<DeliveryPlanning.Pick> pickFoodFromRacks(Level level, IColony colony,
-            List<BlockPos> rackPositions, Food wanted) {
-        return pickGeneric(level, colony, rackPositions, wanted.getCount(), wanted::matches,
+    public static List<DeliveryPlanning.Pick> pickFoodFromRacks(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, Food wanted) {
+        return pickGeneric(level, colony, index, origin, wanted.getCount(), wanted::matches,
                 (inSlot, take) -> new Stack(inSlot, take, 1), false);
     }
 
-    public static List<DeliveryPlanning.Pick> pickBurnableFromRacks(Level level, IColony colony,
-            List<BlockPos> rackPositions, Burnable wanted) {
-        return pickGeneric(level, colony, rackPositions, wanted.getCount(), FurnaceBlockEntity::isFuel,
+    public static List<DeliveryPlanning.Pick> pickBurnableFromRacks(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, Burnable wanted) {
+        return pickGeneric(level, colony, index, origin, wanted.getCount(), FurnaceBlockEntity::isFuel,
                 (inSlot, take) -> new Stack(inSlot, take, 1), false);
     }
 
@@ -85,13 +83,20 @@ public final class RackPicker {
 
     /**
      * Generic item picking from racks with pluggable matching and wrapping logic.
+     * Candidate slots come from the rack index; each one is re-read before it is
+     * picked, and a slot that no longer matches what was indexed invalidates the
+     * index so the next query rescans. Quantities claimed by other requests (see
+     * {@link SlotClaims}) are not offered. With {@code minimizeDeliveryTrips}
+     * the slots are chosen by {@link PickPlanner}, otherwise in rack order.
      *
      * @param level
      *            The world level
      * @param colony
      *            The colony instance
-     * @param rackPositions
-     *            List of rack block positions to search
+     * @param index
+     *            Rack index of the building to pick from
+     * @param origin
+     *            Position of the requester, or null if unknown
      * @param totalNeeded
      *            Total number of items needed
      * @param matcher
@@ -99,77 +104,127 @@ public final class RackPicker {
      * @param wrapperFactory
      *            Factory to create the Stack payload for picks
      * @param singleItemMode
-     *            If true, return immediately after first match (for tools)
+     *            If true, return a single pick of one item (for tools)
      * @return List of picks, or empty list if nothing found
      */
-    private static List<DeliveryPlanning.Pick> pickGeneric(Level level, IColony colony, List<BlockPos> rackPositions,
-            int totalNeeded, Predicate<ItemStack> matcher, BiFunction<ItemStack, Integer, Stack> wrapperFactory,
-            boolean singleItemMode) {
+    private static List<DeliveryPlanning.Pick> pickGeneric(Level level, IColony colony, RackIndex index,
+            @Nullable BlockPos origin, int totalNeeded, Predicate<ItemStack> matcher,
+            BiFunction<ItemStack, Integer, Stack> wrapperFactory, boolean singleItemMode) {
         // Validation
-        if (level == null || level.isClientSide() || colony == null) {
+        if (level == null || level.isClientSide() || colony == null || index == null) {
             return List.of();
         }
-        if (rackPositions == null || rackPositions.isEmpty()) {
+        if (totalNeeded <= 0) {
             return List.of();
         }
-        if (totalNeeded <= 0) {
+
+        List<RackIndex.Entry> entries = index.find(level, matcher);
+        if (entries.isEmpty()) {
             return List.of();
         }
 
+        boolean planned = ModConfig.SERVER.minimizeDeliveryTrips.get();
+        List<PickPlanner.Candidate> candidates = new ArrayList<>();
+        int found = 0;
+        for (RackIndex.Entry entry : entries) {
+            ItemStack inSlot = liveStack(level, index.getHandlers(), entry);
+            if (inSlot.isEmpty() || !matcher.test(inSlot)) {
+                index.invalidate();
+                continue;
+            }
+            if (inSlot.getCount() != entry.count()) {
+                index.invalidate();
+            }
+            RackLocation sourceLoc = new RackLocation(colony.getDimension(), entry.rackPos(), entry.face(),
+                    entry.slot());
+            int unclaimed = inSlot.getCount()
+                    - index.getClaims().getClaimed(sourceLoc, ItemMatch.ItemStackKey.find(inSlot));
+            if (unclaimed <= 0) {
+                continue;
+            }
+            candidates.add(PickPlanner.candidate(entry, sourceLoc, inSlot, unclaimed, origin));
+            found += unclaimed;
+            // Rack order takes the first slots that cover the request
+            if (!planned && found >= totalNeeded) {
+                break;
+            }
+        }
+        if (planned) {
+            candidates = PickPlanner.plan(candidates, totalNeeded);
+        }
+
         ArrayList<DeliveryPlanning.Pick> picks = new ArrayList<>();
-        Set<Long> pickedSlots = new HashSet<>();
         int remaining = totalNeeded;
 
-        rackLoop : for (BlockPos rackPos : rackPositions) {
-            BlockEntity be = level.getBlockEntity(rackPos);
-            if (be == null) {
+        for (PickPlanner.Candidate candidate : candidates) {
+            int take = Math.min(remaining, candidate.count());
+            if (take <= 0) {
                 continue;
             }
 
-            for (Direction face : FACES) {
-                IItemHandler handler = be.getCapability(ForgeCapabilities.ITEM_HANDLER, face).orElse(null);
-                if (handler == null) {
-                    continue;
-                }
+            Stack payload = wrapperFactory.apply(candidate.stack(), take);
+            picks.add(new DeliveryPlanning.Pick(candidate.location(), payload, take, null));
 
-                for (int slot = 0; slot < handler.getSlots(); slot++) {
-                    // Generate unique key for this slot to avoid double-picking
-                    // Uses XOR of block position and slot shifted to high bits
-                    long slotKey = rackPos.asLong() ^ ((long) slot << 48);
-                    if (pickedSlots.contains(slotKey)) {
-                        continue;
-                    }
-
-                    ItemStack inSlot = handler.getStackInSlot(slot);
-                    if (inSlot.isEmpty() || !matcher.test(inSlot)) {
-                        continue;
-                    }
+            if (singleItemMode) {
+                // Tool mode: return immediately with single item
+                return List.copyOf(picks);
+            }
 
-                    int take = Math.min(remaining, inSlot.getCount());
-                    if (take <= 0) {
-                        continue;
-                    }
+            remaining -= take;
+            if (remaining <= 0) {
+                break;
+            }
+        }
 
-                    pickedSlots.add(slotKey);
+        return picks.isEmpty() ? List.of() : List.copyOf(picks);
+    }
 
-                    RackLocation sourceLoc = new RackLocation(colony.getDimension(), rackPos, face, slot);
+    private static ItemStack liveStack(Level level, HandlerCache handlers, RackIndex.Entry entry) {
+        IItemHandler handler = handlers.handlerAt(level, entry.rackPos(), entry.face());
+        if (handler == null || entry.slot() >= handler.getSlots()) {
+            return ItemStack.EMPTY;
+        }
+        return handler.getStackInSlot(entry.slot());
+    }
 
-                    Stack payload = wrapperFactory.apply(inSlot, take);
-                    picks.add(new DeliveryPlanning.Pick(sourceLoc, payload, take, null));
+    // -------------------------------------------------------------------------
+    // Content histogram
+    // -------------------------------------------------------------------------
 
-                    if (singleItemMode) {
-                        // Tool mode: return immediately with single item
-                        return List.copyOf(picks);
+    /**
+     * Counts the contents of the given racks by item key id in a single pass.
+     * Like the pickers, an inventory exposed on several faces is only counted
+     * once. Items whose key was never interned are skipped, since nothing can
+     * be looking for them.
+     *
+     * @param level
+     *            The world level
+     * @param handlers
+     *            Handler cache of the building owning the racks
+     * @param rackPositions
+     *            List of rack block positions to count
+     * @return item key id to count table
+     */
+    public static ItemCountTable countRackContents(Level level, HandlerCache handlers, List<BlockPos> rackPositions) {
+        ItemCountTable counts = new ItemCountTable();
+        if (level == null || level.isClientSide() || rackPositions == null) {
+            return counts;
+        }
+        for (BlockPos rackPos : rackPositions) {
+            for (HandlerCache.Side side : handlers.sidesAt(level, rackPos)) {
+                IItemHandler handler = side.handler();
+                for (int slot = 0; slot < handler.getSlots(); slot++) {
+                    ItemStack inSlot = handler.getStackInSlot(slot);
+                    if (inSlot.isEmpty()) {
+                        continue;
                     }
-
-                    remaining -= take;
-                    if (remaining <= 0) {
-                        break rackLoop;
+                    ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.find(inSlot);
+                    if (key != null) {
+                        counts.addTo(key.getId(), inSlot.getCount());
                     }
                 }
             }
         }
-
-        return picks.isEmpty() ? List.of() : List.copyOf(picks);
+        return counts;
     }
 }
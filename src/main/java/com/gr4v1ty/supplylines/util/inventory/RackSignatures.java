@@ -0,0 +1,192 @@
+package com.gr4v1ty.supplylines.util.inventory;
+
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.items.IItemHandler;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Per-rack content signatures of a building, combined with XOR into one
+ * signature. A rack marked dirty is rehashed on its own and swapped into the
+ * combined signature in O(1); the other racks keep their cached value. A
+ * change in the rack set forces a full recompute.
+ * <p>
+ * Rehashing also diffs each rack's item counts against the previous ones, so
+ * callers can tell which items changed and not just that something did. Each
+ * rack keeps one count table keyed by item id; a rehash counts into a spare
+ * table and swaps it in, so no per-rehash maps are allocated.
+ */
+public final class RackSignatures {
+    /** Cached contribution of each rack to the combined signature. */
+    private final Map<BlockPos, Long> byRack = new HashMap<>();
+    private final Set<BlockPos> dirty = new HashSet<>();
+    private final Map<BlockPos, ItemCountTable> contents = new HashMap<>();
+    private final Set<ItemMatch.ItemStackKey> changedItems = new HashSet<>();
+    private ItemCountTable stagingContents = new ItemCountTable();
+    /** Counted into by the next rehash, then swapped with the table it replaces. */
+    private ItemCountTable spare = new ItemCountTable();
+    private List<BlockPos> hashedRacks = List.of();
+    private boolean allDirty = true;
+    private long combined;
+
+    /**
+     * Marks one rack for rehashing on the next update.
+     */
+    public void markDirty(BlockPos pos) {
+        this.dirty.add(pos.immutable());
+    }
+
+    /**
+     * Marks every rack for rehashing on the next update.
+     */
+    public void markAllDirty() {
+        this.allDirty = true;
+    }
+
+    public boolean hasDirty() {
+        return this.allDirty || !this.dirty.isEmpty();
+    }
+
+    /**
+     * Rehashes dirty racks, or all of them if the rack set changed. Read the
+     * result with {@link #getCombined()}.
+     *
+     * @param racks
+     *            current rack positions
+     * @return number of racks rehashed
+     */
+    public int update(Level level, HandlerCache handlers, List<BlockPos> racks) {
+        if (this.allDirty || !this.hashedRacks.equals(racks)) {
+            this.byRack.clear();
+            this.dirty.clear();
+            this.combined = 0L;
+            this.hashedRacks = List.copyOf(racks);
+            this.allDirty = false;
+            Set<BlockPos> current = new HashSet<>(this.hashedRacks);
+            this.contents.entrySet().removeIf(e -> {
+                if (current.contains(e.getKey())) {
+                    return false;
+                }
+                // Removed rack: everything it held is gone
+                this.collectChanges(e.getValue(), null);
+                return true;
+            });
+            for (BlockPos pos : this.hashedRacks) {
+                long contribution = this.rehash(level, handlers, pos);
+                this.byRack.put(pos, contribution);
+                this.combined ^= contribution;
+            }
+            return this.hashedRacks.size();
+        }
+        int rehashed = 0;
+        for (BlockPos pos : this.dirty) {
+            Long old = this.byRack.get(pos);
+            if (old == null) {
+                // Not one of our racks
+                continue;
+            }
+            long contribution = this.rehash(level, handlers, pos);
+            this.byRack.put(pos, contribution);
+            this.combined ^= old ^ contribution;
+            ++rehashed;
+        }
+        this.dirty.clear();
+        return rehashed;
+    }
+
+    /**
+     * Gets the combined signature as of the last update.
+     */
+    public long getCombined() {
+        return this.combined;
+    }
+
+    /**
+     * Diffs the staging inventory against the last call, adding the items whose
+     * count changed to the changed set.
+     */
+    public void trackStaging(@Nullable IItemHandler staging) {
+        ItemCountTable counts = this.countItems(staging);
+        this.collectChanges(this.stagingContents, counts);
+        this.spare = this.stagingContents;
+        this.stagingContents = counts;
+    }
+
+    /**
+     * Gets the items whose count changed since the last call and clears them.
+     */
+    public Set<ItemMatch.ItemStackKey> drainChangedItems() {
+        Set<ItemMatch.ItemStackKey> drained = Set.copyOf(this.changedItems);
+        this.changedItems.clear();
+        return drained;
+    }
+
+    private long rehash(Level level, HandlerCache handlers, BlockPos pos) {
+        long h = InventorySignature.FNV_OFFSET;
+        IItemHandler handler = handlers.handlerAt(level, pos, null);
+        if (handler != null) {
+            h = InventorySignature.hashItemHandler(h, handler);
+        }
+        ItemCountTable counts = this.countItems(handler);
+        ItemCountTable old = this.contents.put(pos, counts);
+        this.collectChanges(old, counts);
+        this.spare = old != null ? old : new ItemCountTable();
+        return InventorySignature.rackContribution(pos, h);
+    }
+
+    /**
+     * Counts a handler's items into the spare table.
+     */
+    private ItemCountTable countItems(@Nullable IItemHandler handler) {
+        ItemCountTable counts = this.spare;
+        counts.clear();
+        if (handler == null) {
+            return counts;
+        }
+        for (int i = 0; i < handler.getSlots(); ++i) {
+            ItemStack s = handler.getStackInSlot(i);
+            if (!s.isEmpty()) {
+                counts.addTo(ItemMatch.ItemStackKey.of(s).getId(), s.getCount());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Adds the items whose count differs between two tables to the changed
+     * set. A null table counts as empty.
+     */
+    private void collectChanges(@Nullable ItemCountTable before, @Nullable ItemCountTable after) {
+        if (after != null) {
+            for (int slot = 0; slot < after.slotCount(); ++slot) {
+                if (after.isUsed(slot)
+                        && (before == null || before.get(after.keyAt(slot)) != after.valueAt(slot))) {
+                    this.markChanged(after.keyAt(slot));
+                }
+            }
+        }
+        if (before != null) {
+            for (int slot = 0; slot < before.slotCount(); ++slot) {
+                if (before.isUsed(slot) && (after == null || !after.containsKey(before.keyAt(slot)))) {
+                    this.markChanged(before.keyAt(slot));
+                }
+            }
+        }
+    }
+
+    private void markChanged(int id) {
+        ItemMatch.ItemStackKey key = ItemMatch.ItemStackKey.byId(id);
+        // Evicted from the key pool since it was counted
+        if (key != null) {
+            this.changedItems.add(key);
+        }
+    }
+}
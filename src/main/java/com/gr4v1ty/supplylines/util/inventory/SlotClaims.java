@@ -0,0 +1,220 @@
+package com.gr4v1ty.supplylines.util.inventory;
+
+import com.gr4v1ty.supplylines.config.ModConfig;
+import com.gr4v1ty.supplylines.rs.location.RackLocation;
+import com.gr4v1ty.supplylines.rs.util.DeliveryPlanning;
+import com.gr4v1ty.supplylines.util.ItemMatch;
+import com.gr4v1ty.supplylines.util.TimingWheel;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.items.IItemHandler;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Rack slot quantities already promised to requests, per slot and item. The
+ * pickers subtract these from what a slot holds, so two requests are never
+ * handed the same items; a claim on an item that has since been swapped out of
+ * its slot no longer counts against whatever replaced it. Claims are made and
+ * released per owning request: a request while it is being resolved, then each
+ * of its courier deliveries until that delivery completes or is cancelled.
+ * Every claim also expires after {@code slotReservationTtlTicks} in case its
+ * release never arrives.
+ */
+public final class SlotClaims {
+    private final Map<SlotKey, Integer> bySlot = new HashMap<>();
+    private final Map<IToken<?>, Claim> byOwner = new HashMap<>();
+    private final TimingWheel<IToken<?>> expiries = new TimingWheel<>();
+    private long now;
+    private long releases;
+
+    /**
+     * A claimed rack slot and the item claimed from it.
+     */
+    private record SlotKey(RackLocation slot, ItemMatch.ItemStackKey item) {
+    }
+
+    /**
+     * One owner's claim.
+     *
+     * @param slots
+     *            claim key of each pick in pick order, null for picks that
+     *            are not from a rack slot
+     */
+    private record Claim(List<DeliveryPlanning.Pick> picks, List<SlotKey> slots, long expiresAt) {
+    }
+
+    /**
+     * Claims the rack picks for a request, replacing any earlier claim it
+     * held. A replaced claim keeps its original expiry. Picks from anything
+     * other than a rack slot are ignored.
+     */
+    public void claim(IToken<?> owner, List<DeliveryPlanning.Pick> picks) {
+        Claim old = this.byOwner.remove(owner);
+        if (old != null) {
+            this.subtract(old);
+        }
+        List<SlotKey> slots = new ArrayList<>(picks.size());
+        for (DeliveryPlanning.Pick pick : picks) {
+            SlotKey key = null;
+            if (pick.source instanceof RackLocation slot) {
+                key = new SlotKey(slot, ItemMatch.ItemStackKey.of(pick.payload.getStack()));
+                this.bySlot.merge(key, pick.count, Integer::sum);
+            }
+            slots.add(key);
+        }
+        Claim claim;
+        if (old != null) {
+            claim = new Claim(picks, slots, old.expiresAt());
+            if (givesBack(old, claim)) {
+                ++this.releases;
+            }
+        } else {
+            long expiresAt = this.now + ModConfig.SERVER.slotReservationTtlTicks.get();
+            claim = new Claim(picks, slots, expiresAt);
+            this.expiries.schedule(owner, expiresAt);
+        }
+        this.byOwner.put(owner, claim);
+    }
+
+    /**
+     * Releases everything a request has claimed.
+     *
+     * @return whether it held a claim
+     */
+    public boolean release(IToken<?> owner) {
+        Claim claim = this.byOwner.remove(owner);
+        if (claim == null) {
+            return false;
+        }
+        this.subtract(claim);
+        ++this.releases;
+        return true;
+    }
+
+    /**
+     * Gets the picks a request has claimed, or null if it holds no claim.
+     */
+    @Nullable
+    public List<DeliveryPlanning.Pick> get(IToken<?> owner) {
+        Claim claim = this.byOwner.get(owner);
+        return claim != null ? claim.picks() : null;
+    }
+
+    /**
+     * Gets the quantity of an item claimed from a rack slot.
+     */
+    public int getClaimed(RackLocation slot, @Nullable ItemMatch.ItemStackKey item) {
+        return item != null ? this.bySlot.getOrDefault(new SlotKey(slot, item), 0) : 0;
+    }
+
+    /**
+     * Whether every slot a request claimed from still holds the claimed item,
+     * at least as many as all claims on that slot add up to.
+     */
+    public boolean isIntact(IToken<?> owner, Level level, HandlerCache handlers) {
+        Claim claim = this.byOwner.get(owner);
+        if (claim == null) {
+            return false;
+        }
+        for (SlotKey key : claim.slots()) {
+            if (key == null) {
+                continue;
+            }
+            RackLocation slot = key.slot();
+            IItemHandler handler = handlers.handlerAt(level, slot.getInDimensionLocation(), slot.getFace());
+            if (handler == null || slot.getSlotIndex() >= handler.getSlots()) {
+                return false;
+            }
+            ItemStack inSlot = handler.getStackInSlot(slot.getSlotIndex());
+            if (inSlot.isEmpty() || ItemMatch.ItemStackKey.find(inSlot) != key.item()
+                    || inSlot.getCount() < this.bySlot.getOrDefault(key, 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases claims that outlived their time to live.
+     *
+     * @param gameTime
+     *            current game time
+     * @return number of claims released
+     */
+    public int expire(long gameTime) {
+        this.now = gameTime;
+        int[] expired = {0};
+        this.expiries.advance(gameTime, owner -> {
+            Claim claim = this.byOwner.get(owner);
+            // Re-claimed owners have a later deadline scheduled separately
+            if (claim != null && claim.expiresAt() <= gameTime && this.release(owner)) {
+                ++expired[0];
+            }
+        });
+        return expired[0];
+    }
+
+    /**
+     * Gets the number of times claimed quantity was given back so far. Freed
+     * stock can make a request resolvable that was not before; claims that
+     * are replaced by the same or more do not count.
+     */
+    public long getReleaseCount() {
+        return this.releases;
+    }
+
+    public boolean isEmpty() {
+        return this.byOwner.isEmpty();
+    }
+
+    public void clear() {
+        ++this.releases;
+        this.bySlot.clear();
+        this.byOwner.clear();
+        this.expiries.clear();
+    }
+
+    private void subtract(Claim claim) {
+        List<DeliveryPlanning.Pick> picks = claim.picks();
+        for (int i = 0; i < picks.size(); ++i) {
+            SlotKey key = claim.slots().get(i);
+            if (key == null) {
+                continue;
+            }
+            int count = picks.get(i).count;
+            this.bySlot.computeIfPresent(key, (k, n) -> n > count ? n - count : null);
+        }
+    }
+
+    /**
+     * Whether a replacement claims less of any slot than the claim it
+     * replaces.
+     */
+    private static boolean givesBack(Claim old, Claim replacement) {
+        Map<SlotKey, Integer> before = perSlot(old);
+        Map<SlotKey, Integer> after = perSlot(replacement);
+        for (Map.Entry<SlotKey, Integer> e : before.entrySet()) {
+            if (after.getOrDefault(e.getKey(), 0) < e.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<SlotKey, Integer> perSlot(Claim claim) {
+        Map<SlotKey, Integer> counts = new HashMap<>();
+        List<DeliveryPlanning.Pick> picks = claim.picks();
+        for (int i = 0; i < picks.size(); ++i) {
+            SlotKey key = claim.slots().get(i);
+            if (key != null) {
+                counts.merge(key, picks.get(i).count, Integer::sum);
+            }
+        }
+        return counts;
+    }
+}
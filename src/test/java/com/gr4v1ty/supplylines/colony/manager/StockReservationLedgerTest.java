@@ -0,0 +1,52 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A broadcast package must stop counting against network stock once a snapshot
+ * shows its items gone, so in-transit items are not subtracted twice.
+ */
+class StockReservationLedgerTest {
+    private static final int ITEM = 7;
+
+    @Test
+    void broadcastThenSnapshotRefreshReleasesShipment() {
+        StockReservationLedger ledger = new StockReservationLedger();
+        ledger.reserve(ITEM, 64L);
+        assertEquals(36L, ledger.getUncommitted(ITEM, 100L));
+
+        // Broadcast after summary fetch 10; Create pulls the 64 out of the network
+        ledger.ship(ITEM, 64L, 10L);
+        assertEquals(36L, ledger.getUncommitted(ITEM, 100L));
+
+        // Fetch 11 may still come from Create's own summary cache
+        ledger.onSnapshotTaken(11L);
+        assertEquals(36L, ledger.getUncommitted(ITEM, 100L));
+
+        // Fetch 12 shows 36 left; a 30 request must still fit
+        ledger.onSnapshotTaken(12L);
+        assertEquals(36L, ledger.getUncommitted(ITEM, 36L));
+        assertEquals(0L, ledger.getReserved(ITEM));
+    }
+
+    @Test
+    void shipmentKeepsOtherReservations() {
+        StockReservationLedger ledger = new StockReservationLedger();
+        ledger.reserve(ITEM, 64L);
+        ledger.reserve(ITEM, 20L);
+        ledger.ship(ITEM, 64L, 3L);
+        long version = ledger.getVersion();
+
+        ledger.onSnapshotTaken(5L);
+        assertEquals(20L, ledger.getReserved(ITEM));
+        assertEquals(16L, ledger.getUncommitted(ITEM, 36L));
+        assertEquals(version + 1L, ledger.getVersion());
+
+        // Already released; a later snapshot changes nothing
+        ledger.onSnapshotTaken(6L);
+        assertEquals(20L, ledger.getReserved(ITEM));
+        assertEquals(version + 1L, ledger.getVersion());
+    }
+}
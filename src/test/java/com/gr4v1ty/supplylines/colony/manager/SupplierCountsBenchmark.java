@@ -0,0 +1,94 @@
+package com.gr4v1ty.supplylines.colony.manager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import com.gr4v1ty.supplylines.util.ItemCountTable;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Times one restock evaluation of 500 policies against 8 suppliers holding
+ * 5,000 stacks each: walking every supplier summary per policy, as before,
+ * against one count table lookup per supplier. Run with
+ * {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class SupplierCountsBenchmark {
+    private static final int POLICIES = 500;
+    private static final int SUPPLIERS = 8;
+    private static final int STACKS = 5_000;
+    private static final int DISTINCT_ITEMS = 20_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    private final int[][] stackIds = new int[SUPPLIERS][STACKS];
+    private final long[][] stackCounts = new long[SUPPLIERS][STACKS];
+    private final int[] policyIds = new int[POLICIES];
+
+    @Test
+    void restockEvaluation() {
+        Random random = new Random(42L);
+        ItemCountTable[] tables = new ItemCountTable[SUPPLIERS];
+        for (int s = 0; s < SUPPLIERS; ++s) {
+            tables[s] = new ItemCountTable(STACKS);
+            for (int i = 0; i < STACKS; ++i) {
+                this.stackIds[s][i] = random.nextInt(DISTINCT_ITEMS);
+                this.stackCounts[s][i] = 1 + random.nextInt(64);
+                tables[s].addTo(this.stackIds[s][i], this.stackCounts[s][i]);
+            }
+        }
+        for (int p = 0; p < POLICIES; ++p) {
+            this.policyIds[p] = random.nextInt(DISTINCT_ITEMS);
+        }
+        SupplierCounts counts = new SupplierCounts(tables);
+
+        assertArrayEquals(this.scanSummaries(), this.lookUpTables(counts));
+        for (int r = 0; r < WARMUP_ROUNDS; ++r) {
+            this.scanSummaries();
+            this.lookUpTables(counts);
+        }
+        long scanNanos = 0L;
+        long lookupNanos = 0L;
+        for (int r = 0; r < ROUNDS; ++r) {
+            long start = System.nanoTime();
+            this.scanSummaries();
+            scanNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            this.lookUpTables(counts);
+            lookupNanos += System.nanoTime() - start;
+        }
+        System.out.printf("Restock evaluation (%d policies x %d suppliers x %d stacks):%n", POLICIES, SUPPLIERS,
+                STACKS);
+        System.out.printf("  summary walk per policy: %,d us%n", scanNanos / ROUNDS / 1_000L);
+        System.out.printf("  count table lookups:     %,d us%n", lookupNanos / ROUNDS / 1_000L);
+    }
+
+    /** The old path: every policy walks each supplier's summary stacks. */
+    private int[] scanSummaries() {
+        int[] found = new int[POLICIES];
+        for (int p = 0; p < POLICIES; ++p) {
+            found[p] = -1;
+            for (int s = 0; s < SUPPLIERS && found[p] < 0; ++s) {
+                long available = 0L;
+                for (int i = 0; i < STACKS; ++i) {
+                    if (this.stackIds[s][i] == this.policyIds[p]) {
+                        available += this.stackCounts[s][i];
+                    }
+                }
+                if (available > 0) {
+                    found[p] = s;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int[] lookUpTables(SupplierCounts counts) {
+        int[] found = new int[POLICIES];
+        for (int p = 0; p < POLICIES; ++p) {
+            found[p] = counts.nextWithStock(this.policyIds[p], 0);
+        }
+        return found;
+    }
+}